@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Installed when the agent is given the strip argument.
+ * Every audit, auditNumber and continueAudit call is replaced by the value
+ * it was given and every auditIs constraint is removed, the other arguments
+ * are popped where they were pushed so the JIT drops them as dead code.
+ * 
+ * An audited primitive that is unboxed right away is never boxed, it is only
+ * boxed when the caller keeps the Double or Integer the audit returned.
+ */
+public class AuditCallStripper implements ClassFileTransformer {
+
+    static final String PUREFAT = "com/ociweb/purefat/PureFAT";
+    static final byte[] PUREFAT_BYTES = PUREFAT.getBytes();
+    
+    private static final String AUDITED_DOUBLE = "(Lcom/ociweb/purefat/AuditedDouble;";
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className,
+                            Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (null == className || null != classBeingRedefined || isSkipped(className) || !contains(classfileBuffer, PUREFAT_BYTES)) {
+            return null;
+        }
+        try {
+            ClassReader reader = new ClassReader(classfileBuffer);
+            ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+            Stripper stripper = new Stripper(writer);
+            reader.accept(stripper, 0);
+            return stripper.stripped ? writer.toByteArray() : null;
+        } catch (Throwable t) {
+            //never stop a class from loading, it just keeps its plain calls
+            System.err.println("PureFAT agent left "+className+" unchanged: "+t);
+            return null;
+        }
+    }
+    
+    static final boolean isSkipped(String className) {
+        return className.startsWith("java/") || className.startsWith("javax/") ||
+               className.startsWith("sun/") || className.startsWith("jdk/") ||
+               className.startsWith("com/ociweb/purefat/impl/") ||
+               className.startsWith("com/ociweb/purefat/agent/") ||
+               className.equals(PUREFAT);
+    }
+    
+    /**
+     * Classes that never name PureFAT in their constant pool are passed over
+     * without being parsed.
+     */
+    static final boolean contains(byte[] bytes, byte[] target) {
+        int last = bytes.length - target.length;
+        int i = 0;
+        while (i <= last) {
+            int j = 0;
+            while (j < target.length && bytes[i+j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+    
+    /**
+     * @return index of the argument the call returns, -1 if it returns nothing
+     *         or -2 if the call is not one to strip
+     */
+    static final int keptArgument(String owner, String name, String desc) {
+        if (!PUREFAT.equals(owner)) {
+            return -2;
+        }
+        if ("audit".equals(name) || "auditNumber".equals(name)) {
+            //handle audits already cost nothing when off and must still set their carrier
+            return desc.startsWith(AUDITED_DOUBLE) ? -2 : 0;
+        }
+        if ("continueAuditFrom".equals(name) || "continueAuditNumberFrom".equals(name)) {
+            return 1;
+        }
+        if ("continueAuditTo".equals(name) || name.startsWith("auditIs")) {
+            return -1;
+        }
+        return -2;
+    }
+    
+    private static final class Stripper extends ClassVisitor {
+        
+        private boolean stripped;
+        
+        private Stripper(ClassVisitor cv) {
+            super(Opcodes.ASM9, cv);
+        }
+        
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            return new StripMethod(super.visitMethod(access, name, desc, signature, exceptions));
+        }
+        
+        private final class StripMethod extends MethodVisitor {
+            
+            //primitive left in place of a boxed result, boxed only if needed
+            private Type pending;
+            
+            private StripMethod(MethodVisitor mv) {
+                super(Opcodes.ASM9, mv);
+            }
+            
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                if (null != pending && Opcodes.INVOKEVIRTUAL == opcode && 
+                    boxOf(pending).getInternalName().equals(owner) &&
+                    (pending.getClassName()+"Value").equals(name)) {
+                    //unboxed right away so it never needs the box
+                    pending = null;
+                    return;
+                }
+                flush();
+                int kept = Opcodes.INVOKESTATIC == opcode ? keptArgument(owner, name, desc) : -2;
+                if (-2 == kept) {
+                    super.visitMethodInsn(opcode, owner, name, desc, itf);
+                    return;
+                }
+                stripped = true;
+                Type[] args = Type.getArgumentTypes(desc);
+                int i = args.length;
+                while (--i > kept) {
+                    pop(args[i]);
+                }
+                if (kept > 0) {
+                    //only the channel id is under the kept value
+                    if (2 == args[kept].getSize()) {
+                        super.visitInsn(Opcodes.DUP2_X1);
+                        super.visitInsn(Opcodes.POP2);
+                    } else {
+                        super.visitInsn(Opcodes.SWAP);
+                    }
+                    super.visitInsn(Opcodes.POP);
+                }
+                if (kept >= 0 && args[kept].getSort() != Type.OBJECT) {
+                    pending = args[kept];
+                }
+            }
+            
+            private void pop(Type arg) {
+                super.visitInsn(2 == arg.getSize() ? Opcodes.POP2 : Opcodes.POP);
+            }
+            
+            private void flush() {
+                if (null != pending) {
+                    Type box = boxOf(pending);
+                    super.visitMethodInsn(Opcodes.INVOKESTATIC, box.getInternalName(), "valueOf", 
+                                          Type.getMethodDescriptor(box, pending), false);
+                    pending = null;
+                }
+            }
+            
+            @Override
+            public void visitInsn(int opcode) {
+                flush();
+                super.visitInsn(opcode);
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand) {
+                flush();
+                super.visitIntInsn(opcode, operand);
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int var) {
+                flush();
+                super.visitVarInsn(opcode, var);
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                flush();
+                super.visitTypeInsn(opcode, type);
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                flush();
+                super.visitFieldInsn(opcode, owner, name, desc);
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+                flush();
+                super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label) {
+                flush();
+                super.visitJumpInsn(opcode, label);
+            }
+
+            @Override
+            public void visitLabel(Label label) {
+                flush();
+                super.visitLabel(label);
+            }
+
+            @Override
+            public void visitLdcInsn(Object cst) {
+                flush();
+                super.visitLdcInsn(cst);
+            }
+
+            @Override
+            public void visitIincInsn(int var, int increment) {
+                flush();
+                super.visitIincInsn(var, increment);
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                flush();
+                super.visitTableSwitchInsn(min, max, dflt, labels);
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                flush();
+                super.visitLookupSwitchInsn(dflt, keys, labels);
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String desc, int dims) {
+                flush();
+                super.visitMultiANewArrayInsn(desc, dims);
+            }
+
+            @Override
+            public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+                flush();
+                super.visitFrame(type, nLocal, local, nStack, stack);
+            }
+
+            @Override
+            public void visitMaxs(int maxStack, int maxLocals) {
+                flush();
+                super.visitMaxs(maxStack, maxLocals);
+            }
+        }
+    }
+    
+    private static final Type boxOf(Type primitive) {
+        return Type.DOUBLE_TYPE.equals(primitive) ? Type.getType(Double.class) : Type.getType(Integer.class);
+    }
+    
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.agent;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * Add -javaagent:pureFAT-agent.jar=strip to strip the PureFAT audit calls out
+ * of every class as it is loaded.  Stripped classes can never be audited 
+ * again, so PureFAT.switchMode has no effect on them.
+ */
+public class PureFATAgent {
+    
+    //Agent argument to strip the audit calls
+    private final static String STRIP_ARG = "strip";
+    
+    //Set while stripping so PureFAT can warn when switched to a mode that audits
+    private final static String PUREFAT_STRIPPED_KEY = "purefat.stripped";
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        if (STRIP_ARG.equals(args)) {
+            System.setProperty(PUREFAT_STRIPPED_KEY, "true");
+            instrumentation.addTransformer(new AuditCallStripper());
+        } else {
+            System.err.println("PureFAT agent left every class unchanged, it only strips when given "+STRIP_ARG);
+        }
+    }
+    
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        //only classes loaded from now on are rewritten
+        premain(args, instrumentation);
+    }
+    
+}
@@ -0,0 +1,123 @@
+package com.ociweb.purefat.agent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import com.ociweb.purefat.sample.Branches;
+
+public class AuditCallStripperTest {
+
+    @Test
+    public void testStrippedClassVerifies() throws IOException {
+        byte[] stripped = strip(Branches.class);
+        assertNotNull(stripped);
+
+        StringWriter problems = new StringWriter();
+        CheckClassAdapter.verify(new ClassReader(stripped), getClass().getClassLoader(), false, new PrintWriter(problems));
+        assertEquals("", problems.toString());
+
+        assertEquals(new ArrayList<String>(), pureFATCalls(stripped));
+    }
+
+    @Test
+    public void testStrippedClassGivesTheSameResults() throws Exception {
+        Class<?> stripped = new StrippedLoader(getClass().getClassLoader()).define(Branches.class.getName(), strip(Branches.class));
+
+        double[] values = new double[] {1.5, -2, 0, 3.25, -0.5};
+        assertEquals(Branches.sum(values), invoke(stripped, "sum", values));
+        assertEquals(Branches.sum(new double[0]), invoke(stripped, "sum", new double[0]));
+
+        assertEquals(Branches.larger(2, 7), invoke(stripped, "larger", 2d, 7d));
+        assertEquals(Branches.larger(7, 2), invoke(stripped, "larger", 7d, 2d));
+
+        assertEquals(Branches.steps(0), invoke(stripped, "steps", 0));
+        assertEquals(Branches.steps(10), invoke(stripped, "steps", 10));
+
+        assertEquals(Branches.passed(0, 4), invoke(stripped, "passed", 0, 4d));
+        assertEquals(Branches.passed(1, 4), invoke(stripped, "passed", 1, 4d));
+        assertEquals(Branches.passed(2, 4), invoke(stripped, "passed", 2, 4d));
+    }
+
+    @Test
+    public void testClassesWithoutAuditsAreLeftAlone() throws IOException {
+        AuditCallStripper stripper = new AuditCallStripper();
+        assertNull(stripper.transform(null, "com/ociweb/purefat/agent/AuditCallStripperTest", null, null, bytes(getClass())));
+        assertNull(stripper.transform(null, "com/ociweb/purefat/agent/AuditCallStripper", null, null, bytes(AuditCallStripper.class)));
+    }
+
+    private static byte[] strip(Class<?> clazz) throws IOException {
+        return new AuditCallStripper().transform(clazz.getClassLoader(), clazz.getName().replace('.', '/'), null, null, bytes(clazz));
+    }
+
+    private static byte[] bytes(Class<?> clazz) throws IOException {
+        InputStream in = clazz.getResourceAsStream(clazz.getSimpleName()+".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Object invoke(Class<?> clazz, String name, Object ... args) throws Exception {
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method.invoke(null, args);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static List<String> pureFATCalls(byte[] classBytes) {
+        final List<String> calls = new ArrayList<String>();
+        new ClassReader(classBytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                        if (AuditCallStripper.PUREFAT.equals(owner)) {
+                            calls.add(name+desc);
+                        }
+                    }
+                };
+            }
+        }, 0);
+        return calls;
+    }
+
+    //defines the stripped copy beside the original which is still loaded normally
+    private static final class StrippedLoader extends ClassLoader {
+
+        private StrippedLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] classBytes) {
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+    }
+
+}
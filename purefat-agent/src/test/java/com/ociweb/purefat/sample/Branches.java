@@ -0,0 +1,58 @@
+package com.ociweb.purefat.sample;
+
+import com.ociweb.purefat.PureFAT;
+
+/**
+ * Audit calls inside loops and on both sides of branches, stripped by
+ * AuditCallStripperTest.  It is outside the agent package which is never
+ * stripped.
+ */
+public class Branches {
+
+    //every result is unboxed right away
+    public static double sum(double[] values) {
+        double total = 0;
+        for (double v : values) {
+            if (v > 0) {
+                total = PureFAT.audit(total+v, "branches.added", "{}+{}", total, v);
+            } else {
+                total = PureFAT.audit(total-v, "branches.subtracted", "{}-{}", total, v);
+            }
+        }
+        return total;
+    }
+
+    //the boxed result is kept where both sides join
+    public static Double larger(double a, double b) {
+        Double larger = a > b ? PureFAT.audit(a, "branches.larger") : PureFAT.audit(b, "branches.larger");
+        PureFAT.auditIsFinite(larger);
+        return larger;
+    }
+
+    public static int steps(int limit) {
+        int i = 0;
+        int steps = 0;
+        while (true) {
+            if (i >= limit) {
+                break;
+            }
+            steps = PureFAT.audit(steps+i, "branches.steps", "{}+{}", steps, i);
+            i++;
+        }
+        PureFAT.auditIsGTE(steps, 0);
+        return steps;
+    }
+
+    public static double passed(int which, double value) {
+        switch (which) {
+            case 0:
+                PureFAT.continueAuditTo("branches.channel", PureFAT.audit(value, "branches.sent"));
+                return PureFAT.continueAuditFrom("branches.channel", value);
+            case 1:
+                return PureFAT.auditNumber(Double.valueOf(value*2), "branches.doubled", "{}*2", value);
+            default:
+                return -value;
+        }
+    }
+
+}
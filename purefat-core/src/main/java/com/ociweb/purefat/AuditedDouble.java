@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat;
+
+/**
+ * Reusable carrier for an audited primitive, the value and the handle of the
+ * record it was audited under.  Lineage follows the handles so a loop that
+ * keeps reusing the same carriers audits every step without allocating.
+ * 
+ *      AuditedDouble sum = new AuditedDouble();
+ *      audit(sum, 0d, "sum");
+ *      while (...) {
+ *          audit(sum, sum.value()+x, "sum", "({}+x)", sum);
+ *      }
+ */
+public final class AuditedDouble {
+
+    //handle of a value that was not recorded
+    public static final long UNRECORDED = -1;
+    
+    //only set by PureFAT
+    double value;
+    long handle = UNRECORDED;
+    
+    public AuditedDouble() {
+    }
+    
+    public double value() {
+        return value;
+    }
+    
+    /**
+     * @return UNRECORDED if auditing was off when the value was audited
+     */
+    public long handle() {
+        return handle;
+    }
+    
+    @Override
+    public String toString() {
+        return Double.toString(value);
+    }
+    
+}
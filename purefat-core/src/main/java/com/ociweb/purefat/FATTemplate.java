@@ -33,8 +33,10 @@ package com.ociweb.purefat;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -42,6 +44,8 @@ import org.slf4j.helpers.MessageFormatter;
 
 import com.ociweb.purefat.impl.Function;
 import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.Histogram;
+import com.ociweb.purefat.impl.LabelStats;
 import com.ociweb.purefat.impl.Util;
 
 public enum FATTemplate {
@@ -53,7 +57,7 @@ public enum FATTemplate {
                 StackTraceElement[] stackTrace) {
             List<Number> columnNumbers = new ArrayList<Number>();
             List<Function> columnFunctions = new ArrayList<Function>();
-            populateTable(functionAuditTrail, keyNumber, columnNumbers, columnFunctions);
+            populateTable(functionAuditTrail, keyNumber, null, columnNumbers, columnFunctions);
             logTable(logger, functionAuditTrail, columnNumbers, columnFunctions);
             return true;
         }
@@ -142,7 +146,7 @@ public enum FATTemplate {
             StringBuilder builder = new StringBuilder();
             String label = "";
             builder.append(label);
-            buildExpressionTree(functionAuditTrail, keyNumber, builder, "");
+            buildExpressionTree(functionAuditTrail, keyNumber, null, builder, "");
             builder.append("\n").append(label);
 
             logger.info(builder.toString());
@@ -151,8 +155,8 @@ public enum FATTemplate {
 
         @SuppressWarnings("unchecked")
         private void buildExpressionTree(FunctionAuditTrail functionAuditTrail,
-                Number keyNumber, StringBuilder target, String tab) {
-            Function ex = (Function) functionAuditTrail.get(keyNumber);
+                Number keyNumber, Function parent, StringBuilder target, String tab) {
+            Function ex = find(functionAuditTrail, keyNumber, parent);
             if (null != ex) {
                 String newtab = tab + " ";
 
@@ -164,7 +168,7 @@ public enum FATTemplate {
                         } else {
                             if (null != param) {
                                 buildExpressionTree(functionAuditTrail, param,
-                                        target, newtab);
+                                        ex, target, newtab);
                             }
                         }
                     }
@@ -193,7 +197,7 @@ public enum FATTemplate {
                 StackTraceElement[] stackTrace) {
             List<Number> columnNumbers = new ArrayList<Number>();
             List<Function> columnFunctions = new ArrayList<Function>();
-            populateTable(functionAuditTrail, keyNumber, columnNumbers, columnFunctions);
+            populateTable(functionAuditTrail, keyNumber, null, columnNumbers, columnFunctions);
             logTableSummary(logger, functionAuditTrail, columnNumbers, columnFunctions);
             return true;
         }
@@ -203,7 +207,7 @@ public enum FATTemplate {
                 List<Number> rawColumnNumbers, List<Function> rawColumnFunctions) {
             StringBuilder builder = new StringBuilder();
 
-            // <StackElement> <CallCount> <LabelExpression>
+            // <StackElement> <CallCount> <LabelExpression> <LabelStats>
 
             List<String> templateColumnStackElement = new ArrayList<String>();
             int columnStackElementWidth = 0;
@@ -214,6 +218,10 @@ public enum FATTemplate {
             List<String> templateColumnLabelInterpolated = new ArrayList<String>();
             int columnLabelInterpolatedWidth = 0;
             
+            //every value ever saved under the label, not just this trail
+            List<String> templateColumnStats = new ArrayList<String>();
+            int columnStatsWidth = 0;
+            
             List<Number> templateColumnNumber = new ArrayList<Number>();
             List<Function> templateColumnFunction = new ArrayList<Function>();
 
@@ -250,6 +258,11 @@ public enum FATTemplate {
                                 interpolated, templateColumnLabelInterpolated,
                                 columnLabelInterpolatedWidth);
                         
+                        LabelStats stats = functionAuditTrail.stats(fun.labelName());
+                        columnStatsWidth = columnWidth(
+                                null==stats ? "" : stats.toString(), templateColumnStats,
+                                columnStatsWidth);
+                        
                         templateColumnFunction.add(fun);
                         templateColumnNumber.add(num);
 
@@ -279,6 +292,9 @@ public enum FATTemplate {
                 leftJustify(builder, columnLabelInterpolatedWidth,
                         templateColumnLabelInterpolated.get(i));
                 builder.append(SPACE);
+                leftJustify(builder, columnStatsWidth,
+                        templateColumnStats.get(i));
+                builder.append(SPACE);
                 if(1==templateColumnCallCount.get(i).intValue()) {
                     //there is only one usage so display the real values.
                     builder.append(templateColumnNumber.get(i).toString()).append(EQUALS_SYMBOL);
@@ -292,13 +308,80 @@ public enum FATTemplate {
 
         }
     },
+    histogram {
+        @Override
+        public boolean log(Logger logger,
+                FunctionAuditTrail functionAuditTrail, Number keyNumber,
+                StackTraceElement[] stackTrace) {
+            List<Number> columnNumbers = new ArrayList<Number>();
+            List<Function> columnFunctions = new ArrayList<Function>();
+            populateTable(functionAuditTrail, keyNumber, null, columnNumbers, columnFunctions);
+            logHistograms(logger, functionAuditTrail, columnFunctions);
+            return true;
+        }
+
+        private void logHistograms(Logger logger,
+                FunctionAuditTrail functionAuditTrail,
+                List<Function> rawColumnFunctions) {
+            StringBuilder builder = new StringBuilder();
+
+            // <LabelTag> <LabelStats>
+            //     <Range> <Count> <Bar>
+            
+            Set<String> done = new HashSet<String>();
+            for (Function fun : rawColumnFunctions) {
+                // do not report the undefined missing values, one per label
+                if (fun.getPrivateIndex() >= 0 && done.add(fun.labelName())) {
+                    LabelStats stats = functionAuditTrail.stats(fun.labelName());
+                    if (null != stats) {
+                        builder.append("\n  ").append(fun.labelTag()).append(SPACE).append(stats);
+                        logHistogram(builder, stats.histogram());
+                    }
+                }
+            }
+
+            logger.info(builder.toString());
+        }
+        
+        private void logHistogram(StringBuilder builder, Histogram histogram) {
+            int rangeWidth = 0;
+            int countWidth = 0;
+            long largest = 0;
+            int b = histogram.buckets();
+            while (--b >= 0) {
+                long count = histogram.count(b);
+                if (count > 0) {
+                    rangeWidth = Math.max(rangeWidth, Histogram.range(b).length());
+                    countWidth = Math.max(countWidth, Long.toString(count).length());
+                    largest = Math.max(largest, count);
+                }
+            }
+            b = 0;
+            while (b < histogram.buckets()) {
+                long count = histogram.count(b);
+                if (count > 0) {
+                    builder.append("\n      ");
+                    leftJustify(builder, rangeWidth, Histogram.range(b));
+                    builder.append(SPACE);
+                    leftJustify(builder, countWidth, Long.toString(count));
+                    builder.append(SPACE);
+                    //at least one mark so small buckets are not hidden
+                    int bar = (int)Math.max(1, (BAR_WIDTH * count) / largest);
+                    while (--bar >= 0) {
+                        builder.append('#');
+                    }
+                }
+                b++;
+            }
+        }
+    },
     expression {
         @Override
         public boolean log(Logger logger,
                 FunctionAuditTrail functionAuditTrail, Number keyNumber,
                 StackTraceElement[] stackTrace) {
 
-            Function expression = (Function) functionAuditTrail.get(keyNumber);
+            Function expression = functionAuditTrail.get(keyNumber);
             if (null != expression) {
                 logger.info(keyNumber + EQUALS_SYMBOL
                         + deepBuild(functionAuditTrail, expression));
@@ -316,7 +399,7 @@ public enum FATTemplate {
             int i = pars.length;
             Object[] array = new Object[i];
             while (--i >= 0) {
-                Function pFun = functionAuditTrail.get(pars[i]);
+                Function pFun = functionAuditTrail.get(pars[i], expression);
                 if (null == pFun || pFun.isLabel()) {
                     array[i] = pars[i];
                 } else {
@@ -330,6 +413,7 @@ public enum FATTemplate {
 
     private static final String EQUALS_SYMBOL = " = ";
     private static final String SPACE = "  ";
+    private static final int BAR_WIDTH = 40;
 
     public abstract boolean log(Logger logger,
             FunctionAuditTrail functionAuditTrail, Number keyNumber,
@@ -368,11 +452,22 @@ public enum FATTemplate {
         return Math.max(columnWidth, value.toString().length());
     }
 
+    /**
+     * Params are looked up from the function that used them so trails that
+     * link records by position, not by the identity of the boxed value, 
+     * can still be followed.
+     */
+    private static final Function find(FunctionAuditTrail functionAuditTrail,
+            Number keyNumber, Function parent) {
+        return null == parent ? functionAuditTrail.get(keyNumber)
+                              : functionAuditTrail.get(keyNumber, parent);
+    }
+    
     private static final void populateTable(
-            FunctionAuditTrail functionAuditTrail, Number keyNumber,
+            FunctionAuditTrail functionAuditTrail, Number keyNumber, Function parent,
             List<Number> columnNumbers, List<Function> columnFunctions) {
         
-        Function ex = (Function) functionAuditTrail.get(keyNumber);
+        Function ex = find(functionAuditTrail, keyNumber, parent);
         if (null != ex) {
             if (!ex.isLabel()) {
                 for (Number param : ex.params()) {
@@ -382,7 +477,7 @@ public enum FATTemplate {
                         columnFunctions.add(ex);
                     } else {
                         if (null != param) {
-                            populateTable(functionAuditTrail, param, 
+                            populateTable(functionAuditTrail, param, ex,
                                           columnNumbers, columnFunctions);
                         }
                     }
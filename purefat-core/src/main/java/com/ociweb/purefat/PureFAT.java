@@ -0,0 +1,635 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+
+import com.ociweb.purefat.impl.DualAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailExternal;
+import com.ociweb.purefat.impl.FunctionAuditTrailInternal;
+import com.ociweb.purefat.impl.FunctionAuditTrailOffHeap;
+import com.ociweb.purefat.impl.FunctionAuditTrailSegmented;
+import com.ociweb.purefat.impl.HandleTrail;
+import com.ociweb.purefat.impl.LabelStats;
+import com.ociweb.purefat.impl.PFDefault;
+import com.ociweb.purefat.impl.PFImpl;
+import com.ociweb.purefat.impl.PFNone;
+import com.ociweb.purefat.impl.PFSampling;
+import com.ociweb.purefat.impl.PFVerbose;
+
+public class PureFAT {
+    
+    //System property to prevent any storage or checking
+    private final static String PUREFAT_NONE_KEY = "purefat.none";
+    
+    //System property to select internal (in memory) setup
+    private final static String PUREFAT_INTERNAL_KEY = "purefat.internal";
+    
+    //System property to select external (log file) setup
+    private final static String PUREFAT_EXTERNAL_KEY = "purefat.external";
+    
+    //System property to select verbose logging of errors without assertions
+    private final static String PUREFAT_VERBOSE_KEY = "purefat.verbose";
+    
+    //System property to give each thread its own in memory segment
+    private final static String PUREFAT_SEGMENTED_KEY = "purefat.segmented";
+    
+    //System property to keep the in memory records outside of the heap
+    private final static String PUREFAT_OFFHEAP_KEY = "purefat.offheap";
+    
+    //System property to keep only the records of the last this many millis
+    private final static String PUREFAT_FLIGHT_WINDOW_KEY = "purefat.flight.window";
+    
+    //System property to record only 1 in this many trails
+    private final static String PUREFAT_SAMPLE_RATE_KEY = "purefat.sample.rate";
+    
+    //System property set by the agent when it strips out the audit calls
+    private final static String PUREFAT_STRIPPED_KEY = "purefat.stripped";
+    
+    //System property to register the mode as an MBean
+    private final static String PUREFAT_JMX_KEY = "purefat.jmx";
+    
+ //   static final ch.qos.logback.classic.Logger logger = 
+ //           (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(PureFAT.class);
+    
+    //package protected because this is the logger used for writing all the 
+    //expressions. Writing expressions externally requires debug level.
+    static final Logger logger = LoggerFactory.getLogger(PureFAT.class);
+    
+    //only read and written while switching modes
+    private static AuditMode mode = chooseMode();
+    private static FunctionAuditTrail auditTrail;
+    private static HandleTrail handleTrail;
+    
+    //the current PFImpl is the constant target of this call site so the JIT
+    //folds it into every audit, switching modes deoptimizes those callers 
+    //once instead of leaving a volatile read on every call
+    private static final MutableCallSite pfSite = new MutableCallSite(MethodHandles.constant(PFImpl.class, implFor(mode)));
+    private static final MethodHandle pfHandle = pfSite.dynamicInvoker();
+    
+    static {
+        if (System.getProperties().containsKey(PUREFAT_JMX_KEY)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new PureFATMode(), new ObjectName(PureFATMode.OBJECT_NAME));
+            } catch (JMException e) {
+                logger.warn("unable to register "+PureFATMode.OBJECT_NAME, e);
+            }
+        }
+    }
+    
+    /**
+     * The PFImpl of the current mode, read through the call site so it is a
+     * constant to the JIT until the mode is switched.
+     */
+    private static final PFImpl pf() {
+        try {
+            return (PFImpl)pfHandle.invokeExact();
+        } catch (Throwable t) {
+            //a constant handle never throws
+            throw new AssertionError(t);
+        }
+    }
+    
+    private static AuditMode chooseMode() {
+        if (System.getProperties().containsKey(PUREFAT_NONE_KEY)) {
+            return AuditMode.NONE;
+        } 
+        ////////////////
+        //always on OR use assert
+        ///////////////
+        if (System.getProperties().containsKey(PUREFAT_VERBOSE_KEY)) {
+            return AuditMode.VERBOSE;
+        }
+        return AuditMode.DEFAULT;
+    }
+    
+    private static PFImpl implFor(AuditMode mode) {
+        if (AuditMode.NONE == mode) {
+            return new PFNone();
+        }
+        //also picks the trail for handles
+        FunctionAuditTrail trail = auditTrail();
+        PFImpl impl = AuditMode.VERBOSE == mode ? new PFVerbose(trail, handleTrail) : new PFDefault(trail, handleTrail);
+        int rate = Integer.parseInt(System.getProperty(PUREFAT_SAMPLE_RATE_KEY, "1"));
+        return rate > 1 ? new PFSampling(impl, trail, rate) : impl;
+    }
+    
+    /**
+     * Built the first time auditing is on and kept while it is off so 
+     * turning it back on continues the same trail.  Values audited by handle
+     * go to the in memory trail when it is off heap, otherwise to an off heap
+     * trail of their own made when the first handle is audited.
+     */
+    private static FunctionAuditTrail auditTrail() {
+        if (null != auditTrail) {
+            return auditTrail;
+        }
+        
+        ///////////////
+        //in memory
+        //external log
+        //both
+        /////////////
+        
+        boolean isInternal = System.getProperties().containsKey(PUREFAT_INTERNAL_KEY);
+        boolean isExternal = System.getProperties().containsKey(PUREFAT_EXTERNAL_KEY);
+        
+        FunctionAuditTrail internal = null;
+        if (isInternal) {
+            internal = internalAuditTrail();
+            if (isExternal) {
+                auditTrail = new DualAuditTrail(internal,new FunctionAuditTrailExternal(logger));
+            } else {
+                auditTrail = internal;
+            }
+        } else {
+            if (isExternal) {
+                auditTrail = new FunctionAuditTrailExternal(logger);
+            } else {
+                //if nothing is set use both (default)
+                internal = internalAuditTrail();
+                auditTrail = new DualAuditTrail(internal,new FunctionAuditTrailExternal(logger));
+            }
+        }
+        handleTrail = internal instanceof FunctionAuditTrailOffHeap ? 
+                          new HandleTrail((FunctionAuditTrailOffHeap)internal) : new HandleTrail();
+        return auditTrail;
+    }
+    
+    /**
+     * @return the mode chosen from the system properties or last switched to
+     */
+    public static final synchronized AuditMode mode() {
+        return mode;
+    }
+    
+    /**
+     * Switch auditing on or off while running.  Values audited while it was 
+     * off have no trail, they show up as roots of the trails computed from them.
+     * Classes the agent stripped have no audit calls left to switch on.
+     */
+    public static final synchronized void switchMode(AuditMode newMode) {
+        if (newMode == mode) {
+            return;
+        }
+        if (AuditMode.NONE != newMode && System.getProperties().containsKey(PUREFAT_STRIPPED_KEY)) {
+            logger.warn("The agent stripped the audit calls from every class it loaded, they are not audited in {}", newMode);
+        }
+        pfSite.setTarget(MethodHandles.constant(PFImpl.class, implFor(newMode)));
+        MutableCallSite.syncAll(new MutableCallSite[]{pfSite});
+        mode = newMode;
+        logger.info("PureFAT audit mode switched to {}", newMode);
+    }
+    
+    private static FunctionAuditTrail internalAuditTrail() {
+        if (System.getProperties().containsKey(PUREFAT_FLIGHT_WINDOW_KEY)) {
+            return FunctionAuditTrailOffHeap.flightRecorder(Long.parseLong(System.getProperty(PUREFAT_FLIGHT_WINDOW_KEY)));
+        }
+        if (System.getProperties().containsKey(PUREFAT_SEGMENTED_KEY)) {
+            return new FunctionAuditTrailSegmented();
+        }
+        if (System.getProperties().containsKey(PUREFAT_OFFHEAP_KEY)) {
+            return new FunctionAuditTrailOffHeap();
+        }
+        return new FunctionAuditTrailInternal();
+    }
+    
+    public static final void auditIsPositiveRadian(Number number) {
+        pf().auditIsPositiveRadian(number);
+    }
+    
+    public static final void auditIsTightRadian(Number number) {
+        pf().auditIsTightRadian(number);
+    }
+    
+    public static final void auditIsFinite(Number number) {
+        pf().auditIsFinite(number);
+    }
+    
+    public static final void auditIsGT(Number number,Number gt) {
+        pf().auditIsGT(number, gt);
+    }
+    
+    public static final void auditIsGTE(Number number,Number gte) {
+        pf().auditIsGTE(number, gte);
+    }
+    
+    public static final void auditIsLT(Number number,Number lt) {
+        pf().auditIsLT(number, lt);
+    }
+    
+    public static final void auditIsLTE(Number number,Number lte) {
+        pf().auditIsLTE(number, lte);
+    }
+    
+    public static final void auditIsNear(Number number, Number near, double epsilon) {
+        pf().auditIsNear(number, near, epsilon);
+    }
+
+    public static final void auditIsNotZero(Number number) {
+        pf().auditIsNotZero(number);
+    }
+    
+    public static final void auditIsPositive(Number number) {
+        pf().auditIsPositive(number);
+    }
+    
+    public static final void logAuditTrail(Number keyNumber, FATTemplate format) {
+        pf().logAuditTrail(keyNumber, format);
+    }
+    
+    /**
+     * Logs the trail of a value that broke a constraint.  Only the first few
+     * of each kind are logged, the rest are counted and summarized.
+     * @return true if the trail was logged
+     */
+    public static final boolean logViolation(Number keyNumber, FATTemplate format) {
+        return pf().logViolation(keyNumber, format);
+    }
+    
+    /**
+     * Count, min, max, mean and standard deviation of every value audited 
+     * under the label, even those no longer held by the audit trail.
+     * @return null if auditing is off or nothing was audited under the label
+     */
+    public static final LabelStats stats(String label) {
+        return pf().stats(label);
+    }
+    
+    /**
+     * Boxes the value with new so it has its own identity in the trail.  When
+     * nothing is being audited valueOf is used instead, the JIT knows it has 
+     * no side effects and drops the box when the caller only unboxes it.  The
+     * other audits of a primitive box the same way.
+     */
+    public static final Double audit(double value, String label) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label);
+        return boxed;
+    }
+
+    /**
+     * Boxed like {@link #audit(double, String)}.
+     */
+    public static final Integer audit(int value, String label) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label);
+        return boxed;
+    }
+
+    public static final <T extends Number> T audit(T boxed, String label) {
+        pf().audit(boxed, label);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText);
+        return boxed;
+    }
+    
+    public static final Double audit(double value, String label, String expressionText, Number p1) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2, Number p3) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2 ,p3, p4, p5);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6);
+        return boxed;
+    }
+
+    public static final Double audit(double value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6, p7);
+        return boxed;
+    }
+    
+    public static final Double audit(double value, String label, String expressionText, Number[] params) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.audit(boxed, label, expressionText, params);
+        return boxed;
+    }
+    
+    public static final Integer audit(int value, String label, String expressionText, Number p1) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2, Number p3) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2 ,p3, p4, p5);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6);
+        return boxed;
+    }
+
+    public static final Integer audit(int value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6, p7);
+        return boxed;
+    }
+    
+    public static final Integer audit(int value, String label, String expressionText, Number[] params) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.audit(boxed, label, expressionText, params);
+        return boxed;
+    }
+    
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1) {
+        pf().audit(boxed, label, expressionText, p1);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2) {
+        pf().audit(boxed, label, expressionText, p1, p2);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2, Number p3) {
+        pf().audit(boxed, label, expressionText, p1, p2, p3);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2, Number p3, Number p4) {
+        pf().audit(boxed, label, expressionText, p1, p2, p3, p4);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        pf().audit(boxed, label, expressionText, p1, p2 ,p3, p4, p5);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        pf().audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6);
+        return boxed;
+    }
+
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        pf().audit(boxed, label, expressionText, p1, p2, p3, p4, p5, p6, p7);
+        return boxed;
+    }
+    
+    public static final <T extends Number> T auditNumber(T boxed, String label, String expressionText, Number[] params) {
+        pf().audit(boxed, label, expressionText, params);
+        return boxed;
+    }
+    
+    public static final void continueAuditTo(String channelId, Number boxed) {
+        pf().continueAuditTo(channelId,boxed);
+    }
+    
+    public static final Double continueAuditFrom(String channelId, double value) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Double.valueOf(value);
+        }
+        Double boxed = new Double(value);
+        impl.continueAuditFrom(channelId, boxed);
+        return boxed;
+    }
+    
+    public static final Integer continueAuditFrom(String channelId, int value) {
+        PFImpl impl = pf();
+        if (!impl.isAuditing()) {
+            return Integer.valueOf(value);
+        }
+        Integer boxed = new Integer(value);
+        impl.continueAuditFrom(channelId, boxed);
+        return boxed;
+    }
+    
+    public static final Number continueAuditNumberFrom(String channelId, Number boxed) {
+        pf().continueAuditFrom(channelId, boxed);
+        return boxed;
+    }
+    
+    public static final void logAuditTrail(AuditedDouble audited, FATTemplate format) {
+        pf().logAuditTrail(audited.handle, format);
+    }
+    
+    /**
+     * Audits a primitive into a reusable carrier, nothing is allocated.
+     * @return result holding the value and the handle of its record
+     */
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label) {
+        result.handle = pf().auditHandle(value, label);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText) {
+        result.handle = pf().auditHandle(value, label, expressionText, 0, null, null, null, null, null, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1) {
+        result.handle = pf().auditHandle(value, label, expressionText, 1, p1, null, null, null, null, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2) {
+        result.handle = pf().auditHandle(value, label, expressionText, 2, p1, p2, null, null, null, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3) {
+        result.handle = pf().auditHandle(value, label, expressionText, 3, p1, p2, p3, null, null, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4) {
+        result.handle = pf().auditHandle(value, label, expressionText, 4, p1, p2, p3, p4, null, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4, AuditedDouble p5) {
+        result.handle = pf().auditHandle(value, label, expressionText, 5, p1, p2, p3, p4, p5, null, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4, AuditedDouble p5, AuditedDouble p6) {
+        result.handle = pf().auditHandle(value, label, expressionText, 6, p1, p2, p3, p4, p5, p6, null);
+        result.value = value;
+        return result;
+    }
+
+    public static final AuditedDouble audit(AuditedDouble result, double value, String label, String expressionText, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4, AuditedDouble p5, AuditedDouble p6, AuditedDouble p7) {
+        result.handle = pf().auditHandle(value, label, expressionText, 7, p1, p2, p3, p4, p5, p6, p7);
+        result.value = value;
+        return result;
+    }
+    
+}
@@ -43,13 +43,31 @@ public class Constraint {
     private static final Logger logger = LoggerFactory.getLogger(Constraint.class);
     private static final double TWO_PI = Math.PI*2d;
     
+    //System property naming the FATTemplate used to dump the trail of a violation
+    private static final String VIOLATION_TEMPLATE_KEY = "purefat.violation.template";
+    private static final FATTemplate violationTemplate = violationTemplate();
+    
     private Constraint() {
     }
+    
+    /**
+     * A misspelled name falls back to the table instead of failing the class.
+     */
+    private static FATTemplate violationTemplate() {
+        String name = System.getProperty(VIOLATION_TEMPLATE_KEY, FATTemplate.table.name());
+        try {
+            return FATTemplate.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown {} {}, using {}", new Object[] {VIOLATION_TEMPLATE_KEY, name, FATTemplate.table});
+            return FATTemplate.table;
+        }
+    }
 
     final static boolean isNear(Number number, Number near, double epsilon) {
         if (Math.abs(number.doubleValue()-near.doubleValue())>epsilon) {
-            logAuditTrail(number,FATTemplate.table);
-            logger.error("{} not near {} epsilon"+epsilon,number,near);
+            if (logViolation(number,violationTemplate)) {
+                logger.error("{} not near {} epsilon"+epsilon,number,near);
+            }
             return false;
         }
         return true;
@@ -57,8 +75,9 @@ public class Constraint {
     
     final static boolean isGTE(Number number, Number gte) {
         if (number.doubleValue()<gte.doubleValue()) {
-            logAuditTrail(number,FATTemplate.table);
-            logger.error("{} ! >= {}",number,gte);
+            if (logViolation(number,violationTemplate)) {
+                logger.error("{} ! >= {}",number,gte);
+            }
             return false;
         }
         return true;
@@ -66,8 +85,9 @@ public class Constraint {
 
     final static boolean isGT(Number number, Number gte) {
         if (number.doubleValue()<=gte.doubleValue()) {
-            logAuditTrail(number,FATTemplate.table);
-            logger.error("{} ! > {}",number,gte);
+            if (logViolation(number,violationTemplate)) {
+                logger.error("{} ! > {}",number,gte);
+            }
             return false;
         }
         return true;
@@ -75,8 +95,9 @@ public class Constraint {
     
     final static boolean isLTE(Number number, Number lte) {
         if (number.doubleValue()>lte.doubleValue()) {
-            logAuditTrail(number,FATTemplate.table);
-            logger.error("{} ! <= {}",number,lte);
+            if (logViolation(number,violationTemplate)) {
+                logger.error("{} ! <= {}",number,lte);
+            }
             return false;
         }
         return true;
@@ -84,8 +105,9 @@ public class Constraint {
 
     final static boolean isLT(Number number, Number lte) {
         if (number.doubleValue()>=lte.doubleValue()) {
-            logAuditTrail(number,FATTemplate.table);
-            logger.error("{} ! < {}",number,lte);
+            if (logViolation(number,violationTemplate)) {
+                logger.error("{} ! < {}",number,lte);
+            }
             return false;
         }
         return true;
@@ -93,7 +115,7 @@ public class Constraint {
 
     final static boolean isNotZero(Number number) {
         if (number.doubleValue()==0d) {
-            logAuditTrail(number,FATTemplate.table);
+            logViolation(number,violationTemplate);
             return false;
         }
         return true;
@@ -101,7 +123,7 @@ public class Constraint {
     
     final static boolean isFinite(Number number) {
         if (null==number || Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue())) {
-            logAuditTrail(number,FATTemplate.table);
+            logViolation(number,violationTemplate);
             return false;
         }
         return true;
@@ -109,7 +131,7 @@ public class Constraint {
     
     final static boolean isPositive(Number number) {
         if (null==number || number.doubleValue()<0 || Double.isNaN(number.doubleValue()) || Double.isInfinite(number.doubleValue())) {
-            logAuditTrail(number,FATTemplate.table);
+            logViolation(number,violationTemplate);
             return false;
         }
         return true;
@@ -120,7 +142,7 @@ public class Constraint {
      */
     public static boolean isTightRadian(Number number) {
         if (null==number || Double.isNaN(number.doubleValue()) || number.doubleValue()+Math.PI<0 || number.doubleValue()-Math.PI>0) {
-            logAuditTrail(number,FATTemplate.table);
+            logViolation(number,violationTemplate);
             return false;
         }
         return true;
@@ -131,7 +153,7 @@ public class Constraint {
      */
     public static boolean isPositiveRadian(Number number) {
         if (null==number || Double.isNaN(number.doubleValue()) || number.doubleValue()<0 || number.doubleValue()-TWO_PI>0) {
-            logAuditTrail(number,FATTemplate.table);
+            logViolation(number,violationTemplate);
             return false;
         }
         return true;
@@ -51,10 +51,20 @@ public class DualAuditTrail implements FunctionAuditTrail {
         return primary.get(key,startHere);
     }
 
+    @Override
+    public boolean isRecorded(Number key) {
+        return primary.isRecorded(key);
+    }
+
     @Override
     public FunMetaData metaData(Function fun) {
         return primary.metaData(fun);
     }
+    
+    @Override
+    public LabelStats stats(String label) {
+        return primary.stats(label);
+    }
 
     @Override
     public boolean save(Number number, String label, String expression) {
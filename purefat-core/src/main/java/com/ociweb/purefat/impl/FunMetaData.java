@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+
+public class FunMetaData {
+
+    private static final StackTraceElement UNKNOWN = new StackTraceElement("Unknown","Unknown","Unknown",0);
+    
+    static FunMetaData NONE = new FunMetaData(new StackTraceElement[]{},"","");
+    
+    //StackWalker where the JVM has one (Java 9 and later), found by name 
+    //since this is built for Java 7, all null when it is missing
+    private static final Object WALKER;
+    private static final Object FIRST_OUTSIDE;
+    private static final MethodHandle WALK;
+    private static final MethodHandle ITERATOR;
+    private static final MethodHandle CLASS_NAME;
+    private static final MethodHandle TO_ELEMENT;
+    static {
+        Object walker = null;
+        Object firstOutside = null;
+        MethodHandle walk = null;
+        MethodHandle iterator = null;
+        MethodHandle className = null;
+        MethodHandle toElement = null;
+        try {
+            //walk is caller sensitive so it needs a full lookup
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Class<?> functionClass = Class.forName("java.util.function.Function");
+            walker = lookup.findStatic(walkerClass, "getInstance", MethodType.methodType(walkerClass)).invoke();
+            walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, functionClass));
+            iterator = lookup.findVirtual(Class.forName("java.util.stream.BaseStream"), "iterator", MethodType.methodType(Iterator.class));
+            className = lookup.findVirtual(frameClass, "getClassName", MethodType.methodType(String.class));
+            toElement = lookup.findVirtual(frameClass, "toStackTraceElement", MethodType.methodType(StackTraceElement.class));
+            firstOutside = MethodHandleProxies.asInterfaceInstance(functionClass, 
+                               lookup.findStatic(FunMetaData.class, "firstOutside", 
+                                                                 MethodType.methodType(Object.class, Object.class)));
+        } catch (Throwable missing) {
+            walker = null;//older JVM, the whole stack is captured instead
+        }
+        WALKER = walker;
+        FIRST_OUTSIDE = firstOutside;
+        WALK = walk;
+        ITERATOR = iterator;
+        CLASS_NAME = className;
+        TO_ELEMENT = toElement;
+    }
+    
+    private final String label;
+    private final String expression;
+    private final StackTraceElement callInfo;
+    
+    
+    FunMetaData(StackTraceElement[] stackTrace, String label, String expressionText) {
+        this.label = label;
+        this.expression = expressionText;
+        this.callInfo = callSite(stackTrace);
+    }
+    
+    /**
+     * @return first frame outside of PureFAT
+     */
+    static StackTraceElement callSite(StackTraceElement[] stackTrace) {
+        int i = 0;
+        while (++i<stackTrace.length) {
+            if (isOutside(stackTrace[i].getClassName())) {
+                return stackTrace[i];
+            }
+        }
+        return UNKNOWN;
+    }
+    
+    /**
+     * The same frame without capturing the whole stack, with a StackWalker
+     * only the frames up to it are walked.
+     * @return first frame of the current thread outside of PureFAT
+     */
+    static StackTraceElement callSite() {
+        if (null != WALKER) {
+            try {
+                return (StackTraceElement)WALK.invoke(WALKER, FIRST_OUTSIDE);
+            } catch (Throwable t) {
+                //fall back to the whole stack
+            }
+        }
+        return callSite(Thread.currentThread().getStackTrace());
+    }
+    
+    /**
+     * Applied by the StackWalker to the stream of frames.
+     */
+    @SuppressWarnings("unused")
+    private static Object firstOutside(Object frames) throws Throwable {
+        Iterator<?> i = (Iterator<?>)ITERATOR.invoke(frames);
+        while (i.hasNext()) {
+            Object frame = i.next();
+            if (isOutside((String)CLASS_NAME.invoke(frame))) {
+                return TO_ELEMENT.invoke(frame);
+            }
+        }
+        return UNKNOWN;
+    }
+    
+    private static boolean isOutside(String className) {
+        return !className.contains("purefat.impl") && !className.contains("purefat.PureFAT");
+    }
+    
+    /**
+     * Call site found when compiled, no stack needs to be captured.
+     */
+    FunMetaData(StackTraceElement callInfo, String label, String expressionText) {
+        this.label = label;
+        this.expression = expressionText;
+        this.callInfo = callInfo;
+    }
+    
+    public String stackElement() {
+        return callInfo.toString();
+    }
+    
+    public String label() {
+        return label;
+    }
+    
+    public String expression() {
+        return expression;
+    }
+
+}
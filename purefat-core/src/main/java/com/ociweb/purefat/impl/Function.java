@@ -43,6 +43,9 @@ public class Function {
 
     private static final Logger     logger = LoggerFactory.getLogger(Function.class);
     
+    //label of a param whose record was overwritten to make room
+    static final String             EVICTED = "evicted";
+    
     //May be many millions of these objects so we must
     //only keep data if it can't be computed any other way.
     private String                  text;
@@ -50,17 +53,49 @@ public class Function {
     private byte                    paramCount;
     private final Number[]         params; //content is mutable
     private final int              privateIdx;
+    private final long             privateSeq; //-1 unless from the off heap trail
+    private final int              labelId; //-1 when not registered
 
     Function(int idx) {
         privateIdx = idx;
+        privateSeq = -1;
+        labelId = -1;
         params = new Number[PFImpl.MAX_PARAMS];
     }
     
+    /**
+     * View of a record held in columns by the internal trail, these are only
+     * created when a trail is requested.
+     */
+    Function(int idx, int labelId, String label, String expressionText, Number[] paramArray) {
+        this(idx, -1, labelId, label, expressionText, paramArray);
+    }
+    
+    /**
+     * View of an off heap record, the sequence tells it apart from later 
+     * records written at the same position.
+     */
+    Function(int idx, long seq, int labelId, String label, String expressionText, Number[] paramArray) {
+        privateIdx = idx;
+        privateSeq = seq;
+        this.labelId = labelId;
+        params = paramArray;
+        paramCount = (byte) paramArray.length;
+        this.label = label;
+        this.text = expressionText;
+    }
+    
     public Function(Number undef) {
         //missing value
+        this(undef, "undefined");
+    }
+    
+    Function(Number value, String label) {
         privateIdx = -1;
-        params = new Number[]{undef};
-        label = "undefined";
+        privateSeq = -1;
+        labelId = -1;
+        params = new Number[]{value};
+        this.label = label;
         text = PFImpl.LABEL_WRAP;
     }
 
@@ -221,7 +256,7 @@ public class Function {
     }
 
     public void log(String label, Logger logger) {
-        logger.info(label+' '+text, params);
+        logger.info(label+' '+text, (Object[])params);
     }
 
     public String labelTag() {
@@ -236,10 +271,21 @@ public class Function {
     public int getPrivateIndex() {
         return privateIdx;
     }
+    
+    final long getPrivateSequence() {
+        return privateSeq;
+    }
 
     public String labelName() {
        return label;
     }
+    
+    /**
+     * @return id given to the label by the trail that saved it, or -1
+     */
+    int labelId() {
+        return labelId;
+    }
 
 
 
@@ -38,8 +38,19 @@ public interface FunctionAuditTrail {
     
     public Function get(Number key, Function startHere);
     
+    /**
+     * Cheaper than get when only the presence of a record matters.  Trails
+     * with an index only probe it, a record lost to a collision is missed.
+     */
+    public boolean isRecorded(Number key);
+    
     public FunMetaData metaData(Function fun);
     
+    /**
+     * @return stats of every value saved under the label, null if none were
+     */
+    public LabelStats stats(String label);
+    
     public boolean save(Number number, String label, String expression);
     
     public boolean save(Number number, String label, String expression,
@@ -46,6 +46,12 @@ public class FunctionAuditTrailExternal implements FunctionAuditTrail {
 
     private final Map<String,AtomicInteger> channelToCount = new HashMap<String,AtomicInteger>();
     private final Map<String,AtomicInteger> channelFromCount = new HashMap<String,AtomicInteger>();
+    
+    //Call sites are found from the stack once per label or channel and kept,
+    //the two ends of a channel are continued from different places.
+    private final LabelRegistry labels = new LabelRegistry(true);
+    private final LabelRegistry channelsTo = new LabelRegistry(false);
+    private final LabelRegistry channelsFrom = new LabelRegistry(false);
 
     public FunctionAuditTrailExternal(Logger logger) {
         pureFATLogger = logger;
@@ -140,10 +146,10 @@ public class FunctionAuditTrailExternal implements FunctionAuditTrail {
             sb.append(" ");
             
             
-            FunMetaData funMetaData = new FunMetaData(Thread.currentThread().getStackTrace(),label,expression);
+            FunMetaData funMetaData = labels.metaData(labels.record(label, expression, number));
             sb.append(funMetaData.stackElement());
             
-            pureFATLogger.trace(marker, sb.toString(),  pIdArray);
+            pureFATLogger.trace(marker, sb.toString(), (Object[])pIdArray);
 
         }
         return true;
@@ -176,7 +182,7 @@ public class FunctionAuditTrailExternal implements FunctionAuditTrail {
                 }
             }
             
-            FunMetaData funMetaData = new FunMetaData(Thread.currentThread().getStackTrace(),channelId,"");
+            FunMetaData funMetaData = channelsTo.metaData(channelsTo.register(channelId, ""));
             String value = wrapId(boxed)+boxed;
             synchronized(count) {
                 //channel<<<[xxxx]boxed line number
@@ -200,7 +206,7 @@ public class FunctionAuditTrailExternal implements FunctionAuditTrail {
                 }
             }
 
-            FunMetaData funMetaData = new FunMetaData(Thread.currentThread().getStackTrace(),channelId,"");
+            FunMetaData funMetaData = channelsFrom.metaData(channelsFrom.register(channelId, ""));
             String value = wrapId(boxed)+boxed;
             //write to log in the same order we counted them.
             synchronized(count) {
@@ -240,10 +246,20 @@ public class FunctionAuditTrailExternal implements FunctionAuditTrail {
         return null;
     }
 
+    @Override
+    public boolean isRecorded(Number key) {
+        return false;
+    }
+
     @Override
     public FunMetaData metaData(Function fun) {
-        // TODO: query logback by this key? Get the line number data?
-        return null;
+        return labels.metaData(fun.labelName());
+    }
+    
+    @Override
+    public LabelStats stats(String label) {
+        //only kept while trace logging is on
+        return labels.stats(label);
     }
 
 }
@@ -0,0 +1,907 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+public class FunctionAuditTrailInternal implements FunctionAuditTrail  {
+    
+    //Do not make this too much larger it will grow as needed.
+    private final static int RING_BUFFER_INITIAL_SIZE = 1<<20;//1M elements;
+    private final static String RING_BUFFER_INITIAL_SIZE_KEY = "purefat.ringbuffer.size";
+    
+    private final static boolean RING_BUFFER_GROW_DEFAULT = true;
+    private final static String RING_BUFFER_GROW_KEY = "purefat.ringbuffer.grow";
+    
+    private final static String CAPTURE_KEY = "purefat.capture";
+    
+    //Zero for no ceiling, the oldest records are evicted once it is reached.
+    private final static long RING_BUFFER_MAX_BYTES_DEFAULT = 0;
+    private final static String RING_BUFFER_MAX_BYTES_KEY = "purefat.ringbuffer.maxBytes";
+    
+    //File to remember the learned size in, so restarts begin at that size.
+    private final static String RING_BUFFER_PROFILE_KEY = "purefat.ringbuffer.profile";
+    
+    //Register the ring buffer stats with the platform MBean server.
+    private final static String JMX_KEY = "purefat.jmx";
+    
+    //Rough heap cost of one slot across refs, index and every column, this
+    //does not count the values held when not capturing.
+    private final static int SLOT_BYTES = 176;
+    private final static int CAPTURE_SLOT_BYTES = 192;
+    
+    //Records are kept in columns made of these fixed size chunks. Growing
+    //only adds chunks so a record written late is never lost in a copy.
+    private final static int CHUNK_BITS = 14;//16K records
+    private final static int CHUNK_SIZE = 1<<CHUNK_BITS;
+    private final static int CHUNK_MASK = CHUNK_SIZE-1;
+    
+    private final static int PROBES = 64;
+    
+    //param slot when the param was not audited or not found
+    private final static int UNKNOWN = -1;
+    
+    private static final Logger logger = LoggerFactory.getLogger(FunctionAuditTrailInternal.class);
+    
+    private final AtomicBoolean  growing = new AtomicBoolean();
+    private final AtomicInteger  unused = new AtomicInteger();
+    private final AtomicInteger  evicting = new AtomicInteger();
+    
+    //The GC pushes the reference of every collected value here, this is the
+    //free list of slots so they are never searched for.
+    private final ReferenceQueue<Number> freed = new ReferenceQueue<Number>();
+    
+    //When capturing, a collected slot is kept until the records made from
+    //it are gone. The last one to go puts the slot here.
+    private final Queue<Reference<? extends Number>> released = new ConcurrentLinkedQueue<Reference<? extends Number>>();
+    
+    //Capture the bits of each param instead of holding on to it.
+    private final boolean        capture;
+    
+    //Chunks are only allocated when the first slot in them is handed out.
+    //Slots never move so nothing here is ever copied or replaced.
+    private final AtomicReferenceArray<Chunk> chunks;
+    
+    //Slots that may be handed out before the ring must grow.
+    private volatile int         size;
+    
+    //Newest first, once the ring outgrows the index a new larger one is 
+    //added for new values.  The older ones are still probed so they never 
+    //need to be copied.
+    private volatile AtomicIntegerArray[] indexes;
+
+    //default is to go fast as possible, this is not final because it may be
+    //turned off later if an out of memory exception is encountered.
+    private volatile boolean     shouldGrowArray = RING_BUFFER_GROW_DEFAULT;
+    
+    //set once the ring can not grow, from then on the oldest slots are reused
+    private volatile boolean     full;
+    private final int            maxSize;
+
+    private final LabelRegistry labels = new LabelRegistry(true);
+    private final StringTable templates = StringTable.TEMPLATES;
+    
+    private final RingBufferStats stats = new RingBufferStats(this);
+
+    private static final class SlotRef extends WeakReference<Number> {
+        private final int slot;
+        
+        private SlotRef(Number number, int slot, ReferenceQueue<Number> queue) {
+            super(number, queue);
+            this.slot = slot;
+        }
+    }
+    
+    /**
+     * Slots are claimed by a CAS on the reference held in refs, the expected
+     * value is null for a slot never used or the cleared reference taken 
+     * from the free list.
+     * 
+     * Each record is stored across parallel columns of primitives instead of
+     * an object per slot.  Param values are held strongly so their audit 
+     * trail lives as long as the values that depend on them.  When capturing,
+     * only the bits of each param are kept and each slot counts the records 
+     * that use it as a param so it is not reused while they can still reach
+     * it.
+     * 
+     * Every claim of a slot bumps its stamp and each param keeps the stamp
+     * of its slot.  A param slot with a newer stamp was evicted.  The stamp
+     * is odd while the columns are written and made even once they are all
+     * written, readers that see an odd or changed stamp skip the record.
+     */
+    static final class Chunk {
+        private final AtomicReferenceArray<WeakReference<Number>> refs = new AtomicReferenceArray<WeakReference<Number>>(CHUNK_SIZE);
+        private final int[]    labelIds = new int[CHUNK_SIZE];
+        private final int[]    templateIds = new int[CHUNK_SIZE];
+        private final byte[]   arity = new byte[CHUNK_SIZE];
+        private final AtomicIntegerArray stamps = new AtomicIntegerArray(CHUNK_SIZE);
+        private final int[]    paramStamps = new int[CHUNK_SIZE*PFImpl.MAX_PARAMS];
+        private final int[]    params = new int[CHUNK_SIZE*PFImpl.MAX_PARAMS];
+        private final Number[] paramValues;
+        
+        //only when capturing
+        private final long[]   paramBits;
+        private final byte[]   paramKinds;
+        private final AtomicIntegerArray children;
+        
+        private Chunk(boolean capture) {
+            if (capture) {
+                paramValues = null;
+                paramBits = new long[CHUNK_SIZE*PFImpl.MAX_PARAMS];
+                paramKinds = new byte[CHUNK_SIZE*PFImpl.MAX_PARAMS];
+                children = new AtomicIntegerArray(CHUNK_SIZE);
+            } else {
+                paramValues = new Number[CHUNK_SIZE*PFImpl.MAX_PARAMS];
+                paramBits = null;
+                paramKinds = null;
+                children = null;
+            }
+        }
+    }
+    
+    public FunctionAuditTrailInternal() {
+        this(Integer.parseInt(System.getProperty(RING_BUFFER_INITIAL_SIZE_KEY, Integer.toString(RING_BUFFER_INITIAL_SIZE))),
+             Boolean.parseBoolean(System.getProperty(RING_BUFFER_GROW_KEY, Boolean.toString(RING_BUFFER_GROW_DEFAULT))),
+             System.getProperties().containsKey(CAPTURE_KEY),
+             Long.parseLong(System.getProperty(RING_BUFFER_MAX_BYTES_KEY, Long.toString(RING_BUFFER_MAX_BYTES_DEFAULT))),
+             System.getProperty(RING_BUFFER_PROFILE_KEY),
+             System.getProperties().containsKey(JMX_KEY)
+             );
+    }
+    
+    /**
+     * Nothing large is allocated here, the chunks are allocated as the 
+     * slots in them are first handed out.
+     * 
+     * @param initialSize starting buffer size for expressions
+     * @param grow if false wait for the GC to free slots before growing, uses less RAM
+     * @param capture if true keep the bits of each param instead of the param
+     * @param maxBytes ceiling for the ring, zero for none
+     * @param profilePath file the learned size is kept in, null for none
+     * @param jmx if true register the stats as an MBean
+     */
+    private FunctionAuditTrailInternal(int initialSize, boolean grow, boolean capture, long maxBytes, String profilePath, boolean jmx) {
+        
+        shouldGrowArray = grow;
+        this.capture = capture;
+        long slots = maxBytes / (capture ? CAPTURE_SLOT_BYTES : SLOT_BYTES);
+        this.maxSize = maxBytes<=0 ? Integer.MAX_VALUE : (int)Math.max(1, Math.min(Integer.MAX_VALUE, slots));
+        
+        int learnedUsed = 0;
+        if (null != profilePath) {
+            final RingBufferProfile profile = new RingBufferProfile(profilePath);
+            initialSize = Math.max(initialSize, profile.learnedSize());
+            learnedUsed = profile.learnedUsed();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    //free slots are always reused first so this is the high water mark
+                    profile.save(size, Math.min(unused.get(), size));
+                }}));
+        }
+        size = Math.min(initialSize, maxSize);
+        chunks = new AtomicReferenceArray<Chunk>((int)((((long)maxSize)+CHUNK_MASK)>>CHUNK_BITS));
+        //sized for the slots the last run used so no index is added on the way there
+        int used = Math.min(size, learnedUsed);
+        indexes = new AtomicIntegerArray[] {newIndex(Math.max(Math.min(size, CHUNK_SIZE), used))};
+        //as are the chunks, so the save path does not allocate them
+        int slot = 0;
+        while (slot < used && null != chunkFor(slot)) {
+            slot += CHUNK_SIZE;
+        }
+        if (jmx) {
+            stats.register();
+        }
+        logger.info("Internal FunctionAuditTrail initialized with {} elements.",size);
+    }
+    
+    /**
+     * Counts kept while saving and looking up, the same ones registered 
+     * over JMX when purefat.jmx is set.
+     */
+    public final RingBufferStatsMBean stats() {
+        return stats;
+    }
+    
+    final int capacity() {
+        return size;
+    }
+    
+    final int maxCapacity() {
+        return maxSize;
+    }
+    
+    final int usedSlots() {
+        return Math.min(unused.get(), size);
+    }
+    
+    final boolean isFull() {
+        return full;
+    }
+    
+    final int indexCount() {
+        return indexes.length;
+    }
+    
+    /**
+     * Walks every slot handed out, only done when it is asked for.
+     */
+    final int liveSlots() {
+        int live = 0;
+        int i = usedSlots();
+        while (--i>=0) {
+            if (!isFree(i)) {
+                live++;
+            }
+        }
+        return live;
+    }
+    
+    /**
+     * Room for two to four times the slots so it stays sparse until the 
+     * number of slots has doubled and the next one is added.
+     */
+    private static final AtomicIntegerArray newIndex(int slots) {
+        return new AtomicIntegerArray(Integer.highestOneBit(Math.max(PROBES, slots-1)<<2));
+    }
+    
+    /**
+     * @return null if no slot in the chunk has been handed out yet
+     */
+    private final Chunk chunk(int slot) {
+        return chunks.get(slot>>CHUNK_BITS);
+    }
+    
+    /**
+     * Allocates the chunk the first time one of its slots is handed out.
+     * @return null if there was not enough memory
+     */
+    private final Chunk chunkFor(int slot) {
+        Chunk chunk = chunks.get(slot>>CHUNK_BITS);
+        if (null == chunk) {
+            try {
+                chunks.compareAndSet(slot>>CHUNK_BITS, null, newChunk());
+            } catch (OutOfMemoryError outOfMemory) {
+                if (slot<CHUNK_SIZE) {
+                    //no older chunk to evict from, nothing can be recorded
+                    logger.error("Need more memory to hold the first {} expressions.", CHUNK_SIZE);
+                    throw outOfMemory;
+                }
+                //losing old history is better than taking down the JVM
+                logger.warn("Need more memory to hold expressions saved at this fast rate, evicting the oldest.");
+                size = slot&~CHUNK_MASK;
+                full = true;
+            }
+            chunk = chunks.get(slot>>CHUNK_BITS);
+        }
+        return chunk;
+    }
+    
+    Chunk newChunk() {
+        return new Chunk(capture);
+    }
+    
+    private final WeakReference<Number> ref(int slot) {
+        Chunk chunk = chunk(slot);
+        return null==chunk ? null : chunk.refs.get(slot&CHUNK_MASK);
+    }
+    
+    private final boolean holds(int slot, Number key) {
+        WeakReference<Number> ref = ref(slot);
+        return null!=ref && ref.get()==key;
+    }
+    
+    private final boolean isFree(int slot) {
+        WeakReference<Number> ref = ref(slot);
+        return null==ref || null==ref.get();
+    }
+    
+    /**
+     * Maps the identity hash of the value to its slot, only the newest 
+     * index is written.  It holds no references, every hit is confirmed 
+     * against refs so reused slots can never answer for a value that is 
+     * gone.  Collisions probe the neighboring entries, if they are all live
+     * one is overwritten and get falls back to the scan.
+     */
+    private final void index(int slot, Number number) {
+        AtomicIntegerArray index = indexes[0];
+        int indexMask = index.length()-1;
+        int bucket = System.identityHashCode(number) & indexMask;
+        int i = 0;
+        while (i<PROBES) {
+            int pos = (bucket+i) & indexMask;
+            int entry = index.get(pos);
+            if ((0==entry || isFree(entry-1)) && index.compareAndSet(pos, entry, slot+1)) {
+                return;
+            }
+            i++;
+        }
+        //neighborhood is full of live values, replace one of them
+        index.set((bucket+(slot&(PROBES-1))) & indexMask, slot+1);
+    }
+    
+    private final int indexOf(Number key) {
+        int hash = System.identityHashCode(key);
+        for (AtomicIntegerArray index : indexes) {
+            int indexMask = index.length()-1;
+            int bucket = hash & indexMask;
+            int i = 0;
+            while (i<PROBES) {
+                int slot = index.get((bucket+i) & indexMask)-1;
+                if (slot<0) {
+                    break;//never written past here
+                }
+                if (holds(slot, key)) {
+                    return slot;
+                }
+                i++;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Only one thread adds an index, if another is already doing it the 
+     * caller just carries on with the current one.
+     */
+    private final void addIndex(int slots) {
+        if (!growing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            AtomicIntegerArray[] current = indexes;
+            if (slots > current[0].length()>>1) {
+                AtomicIntegerArray[] temp = new AtomicIntegerArray[current.length+1];
+                temp[0] = newIndex(slots);
+                System.arraycopy(current, 0, temp, 1, current.length);
+                indexes = temp;
+                logger.info("ring buffer has {} elements in use, added index of {}",slots, temp[0].length());
+            }
+        } finally {
+            growing.set(false);
+        }
+    }
+    
+    /**
+     * Records the param, a param that is the value itself (labels) is 
+     * only kept by slot so the record does not keep its own value alive.
+     */
+    private final void param(Chunk chunk, int slot, int p, Number number, Number param) {
+        int base = ((slot&CHUNK_MASK)*PFImpl.MAX_PARAMS)+p;
+        int paramSlot = param==number ? slot : (null==param ? UNKNOWN : indexOf(param));
+        chunk.params[base] = paramSlot;
+        chunk.paramStamps[base] = paramSlot<0 ? 0 : published(chunk(paramSlot).stamps.get(paramSlot&CHUNK_MASK));
+        if (null==chunk.paramValues) {
+            byte kind = NumberBits.kind(param);
+            chunk.paramKinds[base] = kind;
+            chunk.paramBits[base] = NumberBits.bits(param, kind);
+            if (paramSlot>=0 && paramSlot!=slot) {
+                //can not be reused now, the param is alive and holds it
+                chunk(paramSlot).children.incrementAndGet(paramSlot&CHUNK_MASK);
+            }
+        } else {
+            chunk.paramValues[base] = param==number ? null : param;
+        }
+    }
+    
+    /**
+     * The param as it was saved, or when capturing, the param itself if
+     * it is still alive otherwise boxed again from its bits.
+     */
+    private final Number paramValue(Chunk chunk, int slot, int p, Number key) {
+        int base = ((slot&CHUNK_MASK)*PFImpl.MAX_PARAMS)+p;
+        int paramSlot = chunk.params[base];
+        if (paramSlot==slot) {
+            return key;
+        }
+        if (null!=chunk.paramValues) {
+            return chunk.paramValues[base];
+        }
+        if (paramSlot>=0 && !isEvicted(chunk, slot, p)) {
+            WeakReference<Number> ref = ref(paramSlot);
+            Number value = null==ref ? null : ref.get();
+            if (null!=value) {
+                return value;
+            }
+        }
+        return NumberBits.box(chunk.paramKinds[base], chunk.paramBits[base]);
+    }
+    
+    /**
+     * True if the key is the param or, when capturing, has the same bits
+     * as the param so it may have been boxed again from them.
+     */
+    private final boolean isParam(Chunk chunk, int slot, int p, Number key) {
+        int base = ((slot&CHUNK_MASK)*PFImpl.MAX_PARAMS)+p;
+        int paramSlot = chunk.params[base];
+        if (paramSlot<0) {
+            return false;
+        }
+        if (null!=chunk.paramValues) {
+            return chunk.paramValues[base]==key || (paramSlot==slot && holds(slot, key));
+        }
+        if (!isEvicted(chunk, slot, p) && holds(paramSlot, key)) {
+            return true;
+        }
+        byte kind = NumberBits.kind(key);
+        return chunk.paramKinds[base]==kind && chunk.paramBits[base]==NumberBits.bits(key, kind);
+    }
+    
+    /**
+     * True if the slot of the param has been claimed again since the 
+     * record was saved.
+     */
+    private final boolean isEvicted(Chunk chunk, int slot, int p) {
+        int base = ((slot&CHUNK_MASK)*PFImpl.MAX_PARAMS)+p;
+        int paramSlot = chunk.params[base];
+        return paramSlot>=0 && published(chunk(paramSlot).stamps.get(paramSlot&CHUNK_MASK)) != chunk.paramStamps[base];
+    }
+    
+    /**
+     * @return stamp the slot has, or will have, once its record is written
+     */
+    private static final int published(int stamp) {
+        return (stamp+1)&~1;
+    }
+    
+    private final boolean isRetained(int slot) {
+        Chunk chunk = chunk(slot);
+        return null!=chunk && null!=chunk.children && chunk.children.get(slot&CHUNK_MASK)>0;
+    }
+    
+    private final int position() {
+        return Math.max(0, usedSlots()-1);
+    }
+
+    public final Function get(Number key) {
+        return get(key,-1);
+    }
+    
+    /**
+     * When the key is one of the params of startHere its slot was recorded
+     * with the params so no search is needed.  This is the only way to find
+     * a captured param after it was collected.
+     */
+    public final Function get(Number key, Function startHere) {
+        int slot = startHere.getPrivateIndex();
+        Chunk chunk = slot<0 ? null : chunk(slot);
+        if (null!=chunk) {
+            int p = chunk.arity[slot&CHUNK_MASK];
+            while (--p>=0) {
+                if (isParam(chunk, slot, p, key)) {
+                    stats.lookedUp(0);
+                    return isEvicted(chunk, slot, p) ? new Function(key, Function.EVICTED)
+                                                     : paramView(chunk, slot, p, key);
+                }
+            }
+        }
+        return get(key,slot);
+    }
+    
+    /**
+     * This is only called when we need to debug an expression that has recently
+     * failed.  Most keys are found with one probe of the identity index, if
+     * the entry was lost to a collision we know that the fastest way of finding
+     * the key is to start at the current/parentExpression position and go back.
+     * 
+     * No lock is taken, slots never move when the ring grows so a search of
+     * the slots handed out when the search began is enough.
+     * 
+     * @param key
+     * @param startLookingFrom
+     * @return
+     */
+    private final Function get(Number key, int startLookingFrom) {
+        int slot = indexOf(key);
+        if (slot>=0) {
+            stats.lookedUp(0);
+            return view(slot, key);
+        }
+        int limit = usedSlots();
+        if (limit<=0) {
+            stats.lookedUp(0);
+            return null;
+        }
+        int start = (startLookingFrom<0 || startLookingFrom>=limit) ? position() : startLookingFrom;
+        int i = start;
+        int scanned = 0;
+        do {
+            scanned++;
+            if (holds(i, key)) {
+                stats.lookedUp(scanned);
+                return view(i, key);
+            }
+            if (--i<0) {
+                i = limit-1;
+            }
+        } while (i!=start);
+        stats.lookedUp(scanned);
+        return null;//not found, looked everywhere
+    }
+    
+    /**
+     * Builds the Function for the record found holding the key.
+     * @return null if the record is being written or was replaced while read
+     */
+    private final Function view(int slot, Number key) {
+        Chunk chunk = chunk(slot);
+        int pos = slot&CHUNK_MASK;
+        int stamp = chunk.stamps.get(pos);
+        //the ref is checked again so it can not be paired with the next record
+        if (0!=(stamp&1) || !holds(slot, key)) {
+            return null;
+        }
+        return read(chunk, slot, stamp, key);
+    }
+    
+    /**
+     * Builds the Function for the record of a param, which may have been 
+     * collected so it is confirmed by the stamp recorded with it.
+     */
+    private final Function paramView(Chunk chunk, int slot, int p, Number key) {
+        int base = ((slot&CHUNK_MASK)*PFImpl.MAX_PARAMS)+p;
+        int paramSlot = chunk.params[base];
+        Chunk paramChunk = chunk(paramSlot);
+        int stamp = paramChunk.stamps.get(paramSlot&CHUNK_MASK);
+        if (published(stamp) != chunk.paramStamps[base]) {
+            return new Function(key, Function.EVICTED);
+        }
+        if (0!=(stamp&1)) {
+            return null;
+        }
+        return read(paramChunk, paramSlot, stamp, key);
+    }
+    
+    /**
+     * Reads the columns of one record.
+     * @return null if the stamp changed while they were read
+     */
+    private final Function read(Chunk chunk, int slot, int stamp, Number key) {
+        int pos = slot&CHUNK_MASK;
+        Number[] paramArray = new Number[chunk.arity[pos]];
+        int p = paramArray.length;
+        while (--p>=0) {
+            paramArray[p] = paramValue(chunk, slot, p, key);
+        }
+        int labelId = chunk.labelIds[pos];
+        int templateId = chunk.templateIds[pos];
+        if (stamp!=chunk.stamps.get(pos)) {
+            return null;
+        }
+        return new Function(slot, 
+                            labelId,
+                            labels.label(labelId), 
+                            templates.value(templateId),
+                            paramArray);
+    }
+
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression) {
+        return store(number, label, expression, 0, null, null, null, null, null, null, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1) {
+        return store(number, label, expression, 1, p1, null, null, null, null, null, null);
+    }
+
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2) {
+        return store(number, label, expression, 2, p1, p2, null, null, null, null, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3) {
+        return store(number, label, expression, 3, p1, p2, p3, null, null, null, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4) {
+        return store(number, label, expression, 4, p1, p2, p3, p4, null, null, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        return store(number, label, expression, 5, p1, p2, p3, p4, p5, null, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        return store(number, label, expression, 6, p1, p2, p3, p4, p5, p6, null);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number, java.lang.Number)
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        return store(number, label, expression, 7, p1, p2, p3, p4, p5, p6, p7);
+    }
+    
+    /* (non-Javadoc)
+     * @see com.ociweb.purefat.ExpressionWriter#save(java.lang.Number, java.lang.String, java.lang.String, java.lang.Number[])
+     */
+    @Override
+    public final boolean save(Number number, String label, String expression, Number[] params) {
+        int n = params.length;
+        return store(number, label, expression, n, 
+                     n>0 ? params[0] : null, n>1 ? params[1] : null, n>2 ? params[2] : null, 
+                     n>3 ? params[3] : null, n>4 ? params[4] : null, n>5 ? params[5] : null,
+                     n>6 ? params[6] : null);
+    }
+    
+    /**
+     * Claims a slot and writes every column of the record, unused params are
+     * cleared so they do not hold on to old values.  The value is only 
+     * indexed once the record is complete.
+     */
+    private final boolean store(Number number, String label, String expression, int count,
+                                Number p0, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        int labelId = labels.record(label, expression, number);
+        int templateId = templates.id(expression);
+        
+        int slot = findSlot(number);
+        Chunk chunk = chunk(slot);
+        int pos = slot&CHUNK_MASK;
+        chunk.labelIds[pos] = labelId;
+        chunk.templateIds[pos] = templateId;
+        chunk.arity[pos] = (byte)count;
+        param(chunk, slot, 0, number, p0);
+        param(chunk, slot, 1, number, p1);
+        param(chunk, slot, 2, number, p2);
+        param(chunk, slot, 3, number, p3);
+        param(chunk, slot, 4, number, p4);
+        param(chunk, slot, 5, number, p5);
+        param(chunk, slot, 6, number, p6);
+        //even again, the columns are visible to any reader that sees it
+        chunk.stamps.incrementAndGet(pos);
+        index(slot, number);
+        return true;
+    }
+    
+    /**
+    * Takes the slot of a value the GC has already collected, if there are 
+    * none it takes the next slot that has never been used.  Neither case 
+    * searches and the only time a producer waits is for the GC when it 
+    * has been asked not to grow.  Once the ring is at its ceiling the oldest
+    * slots are taken even if their values are still alive.
+    * @return
+    */
+    private final int findSlot(Number number) {
+        boolean waited = false;
+        int probes = 0;
+        long waitStart = 0;
+        while (true) {
+            Reference<? extends Number> dead;
+            while (null != (dead = freed.poll())) {
+                int i = ((SlotRef)dead).slot;
+                probes++;
+                //records still using it as a param will release it later
+                if (!isRetained(i) && claim(i, dead, number)) {
+                    stats.saved(RingBufferStats.REUSED, probes, waitStart);
+                    return i;
+                }
+            }
+            while (null != (dead = released.poll())) {
+                int i = ((SlotRef)dead).slot;
+                probes++;
+                if (claim(i, dead, number)) {
+                    stats.saved(RingBufferStats.REUSED, probes, waitStart);
+                    return i;
+                }
+            }
+            
+            int i = unused.get();
+            if (i < size) {
+                probes++;
+                if (unused.compareAndSet(i, i+1)) {
+                    if (null == chunkFor(i)) {
+                        continue;//out of memory, now evicting
+                    }
+                    if (!claim(i, null, number)) {
+                        continue;//taken by an evicting producer first
+                    }
+                    if (i > indexes[0].length()>>1) {
+                        addIndex(i);
+                    }
+                    stats.saved(RingBufferStats.FRESH, probes, waitStart);
+                    return i;
+                }
+                continue;
+            }
+            
+            if (full) {
+                //slots were handed out in order so this is about the oldest,
+                //one still being written is passed over by claim
+                i = (evicting.getAndIncrement() & Integer.MAX_VALUE) % size;
+                probes++;
+                if (claim(i, ref(i), number)) {
+                    stats.saved(RingBufferStats.EVICTING, probes, waitStart);
+                    return i;
+                }
+            } else {
+                if (0 == waitStart) {
+                    waitStart = System.nanoTime();
+                }
+                if (shouldGrowArray || waited) {
+                    waited = false;
+                    grow(!shouldGrowArray);
+                } else {
+                    //give the GC a chance to hand back cleared slots before growing
+                    waited = true;
+                    Thread.yield();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Makes the stamp odd then swaps the new reference in for the expected 
+     * one, only a claim moves the stamp off even so it also keeps a second
+     * producer out of a record that is still being written.
+     * @return false if the slot is being written or the expected reference 
+     *         was stale because the slot has already been taken
+     */
+    private final boolean claim(int i, Reference<? extends Number> expected, Number number) {
+        Chunk chunk = chunk(i);
+        int pos = i&CHUNK_MASK;
+        int stamp = chunk.stamps.get(pos);
+        if (0!=(stamp&1) || expected!=chunk.refs.get(pos)) {
+            return false;
+        }
+        //odd until store has written the record, and before the new ref is 
+        //published so no reader pairs it with the old record
+        if (!chunk.stamps.compareAndSet(pos, stamp, stamp+1)) {
+            return false;
+        }
+        chunk.refs.set(pos, new SlotRef(number, i, freed));
+        if (capture && null!=expected) {
+            release(chunk, i);
+            //records still using the evicted one no longer count
+            chunk.children.set(i&CHUNK_MASK, 0);
+        }
+        return true;
+    }
+    
+    /**
+     * Called when a captured slot is reused, the slots it used as params may
+     * now be free.  The last record to release a collected slot hands it
+     * back for reuse.
+     */
+    private final void release(Chunk chunk, int slot) {
+        int base = (slot&CHUNK_MASK)*PFImpl.MAX_PARAMS;
+        int p = chunk.arity[slot&CHUNK_MASK];
+        while (--p>=0) {
+            int paramSlot = chunk.params[base+p];
+            boolean evicted = isEvicted(chunk, slot, p);
+            //not needed again and may no longer be accurate
+            chunk.params[base+p] = UNKNOWN;
+            if (paramSlot>=0 && paramSlot!=slot && !evicted &&
+                0==chunk(paramSlot).children.decrementAndGet(paramSlot&CHUNK_MASK)) {
+                WeakReference<Number> ref = ref(paramSlot);
+                if (null!=ref && null==ref.get()) {
+                    released.add(ref);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Growing only raises the number of slots that may be handed out, the 
+     * chunk for them is allocated when the first one is.  Nothing is copied
+     * and writers never wait for it.
+     */
+    private final void grow(boolean mustGrowArray) {
+        if (!growing.compareAndSet(false, true)) {
+            Thread.yield();
+            return;
+        }
+        try {
+            int oldSize = size;
+            if (unused.get() < oldSize || full) {
+                return;//another thread already grew it
+            }
+            //fill out the last chunk or add one more
+            int newBufferSize = (int)Math.min((((long)oldSize>>CHUNK_BITS)+1)<<CHUNK_BITS, maxSize);
+            if (newBufferSize <= oldSize) {
+                logger.warn("ring buffer is at its ceiling of {} elements, evicting the oldest.", oldSize);
+                full = true;
+                return;
+            }
+            logger.debug("growing ring buffer to {} reason:{} ",newBufferSize, mustGrowArray ? "Must for volume" : "Should for performance" );
+            size = newBufferSize;
+            stats.grew();
+        } finally {
+            growing.set(false);
+        }
+    }
+
+    public final boolean isRecorded(Number key) {
+        return indexOf(key)>=0;
+    }
+    
+    public final FunMetaData metaData(Function fun) {
+        return fun.labelId()>=0 ? labels.metaData(fun.labelId()) : labels.metaData(fun.labelName());
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        return labels.stats(label);
+    }
+
+    @Override
+    public boolean continueAuditTo(String channelId, Number boxed) {
+        // not sure this implementation can use this for anything
+        return true;
+    }
+
+    @Override
+    public boolean continueAuditFrom(String channelId, Number boxed) {
+        save(boxed, "Channel:"+channelId, PFImpl.LABEL_WRAP, boxed);
+        return true;
+    }
+
+}
@@ -0,0 +1,653 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.purefat.AuditedDouble;
+
+/**
+ * In memory audit trail that keeps every record in direct ByteBuffers outside
+ * of the Java heap.  Records hold the bits of each value and the sequence
+ * number of the record each param came from, so nothing in them needs to be
+ * traced by the GC.  The only heap structure is a small index from the live
+ * boxed values to their records, and the sequence number of each record 
+ * kept apart so it can be read and written in order with the record.
+ * 
+ * Records are written in sequence order and wrap around once every segment
+ * is full, the oldest records are overwritten.  A param whose record was
+ * overwritten shows up as evicted in the trail.  While a record is written
+ * its sequence number is the complement of the new one, the new one is only
+ * set once the whole record is there.  Readers that find another number 
+ * when they are done skip the record.
+ * 
+ * The sequence number of a record is also the handle used by 
+ * {@link AuditedDouble}, those records are linked to their params by handle
+ * and never touch the index until they are rendered.
+ * 
+ * As a flight recorder every record is also stamped with the time it was
+ * written.  Each time the writers start a new segment, the segments whose
+ * newest record is older than the window are released, so the memory held
+ * follows the window and not the number of segments.  Nothing is released
+ * while a trail rendered within the last window may still be reading it, and
+ * the records of a released segment read as overwritten.
+ * 
+ * A released segment is only dropped, its memory goes back when the GC 
+ * collects the buffer.  Readers and stalled writers may still hold it and
+ * nothing counts them, so freeing it by hand could have them touch memory 
+ * that was handed back.  When direct memory runs short the JVM runs a GC 
+ * before it fails an allocation, so dropped segments are reclaimed then.
+ */
+public class FunctionAuditTrailOffHeap implements FunctionAuditTrail {
+
+    private final static int SEGMENT_BITS = 16;//64K records per segment
+    private final static int SEGMENT_RECORDS = 1<<SEGMENT_BITS;
+    private final static int SEGMENT_MASK = SEGMENT_RECORDS-1;
+    
+    private final static int SEGMENTS_DEFAULT = 16;//1M records
+    private final static int SEGMENTS_MAX = (1<<(31-SEGMENT_BITS))-1;//positions must fit in an int
+    private final static String SEGMENTS_KEY = "purefat.offheap.segments";
+    
+    private final static int INDEX_SIZE_DEFAULT = 1<<20;
+    private final static String INDEX_SIZE_KEY = "purefat.offheap.index.size";
+    
+    //record layout, longs first so they are aligned
+    private final static int VALUE        = 0;
+    private final static int PARENTS      = 8;   //long sequence per param
+    private final static int PARAM_VALUES = 64;  //long bits per param
+    private final static int LABEL        = 120;
+    private final static int TEMPLATE     = 124;
+    private final static int HASH         = 128; //identity hash of the value
+    private final static int KIND         = 132;
+    private final static int ARITY        = 133;
+    private final static int PARAM_KINDS  = 134; //byte per param
+    private final static int TIME         = 144; //millis, only as a flight recorder
+    private final static int RECORD_BYTES = 152;
+    
+    //parent when the param was never audited
+    private final static long UNKNOWN = -1;
+    
+    private final static int PROBES = 16;
+    
+    //only the keys being rendered are indexed for handles
+    private final static int HANDLE_INDEX_SIZE = 1<<10;
+    
+    private static final Logger logger = LoggerFactory.getLogger(FunctionAuditTrailOffHeap.class);
+    
+    private final long capacity;
+    private final long window;
+    private volatile long lastRead;
+    private volatile boolean warned;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicReferenceArray<ByteBuffer> segments;
+    //sequence number of the record at each position
+    private final AtomicLongArray seqs;
+    
+    private final AtomicReferenceArray<Entry> index;
+    private final int indexMask;
+    
+    private final LabelRegistry labels = new LabelRegistry(true);
+    private final StringTable templates = StringTable.TEMPLATES;
+    
+    /**
+     * Ties a live boxed value to the sequence number of its record, the 
+     * entry is free for reuse as soon as the value is collected.
+     */
+    private static final class Entry extends WeakReference<Number> {
+        private final long seq;
+        
+        private Entry(Number number, long seq) {
+            super(number);
+            this.seq = seq;
+        }
+    }
+    
+    public FunctionAuditTrailOffHeap() {
+        this(Integer.parseInt(System.getProperty(SEGMENTS_KEY, Integer.toString(SEGMENTS_DEFAULT))),
+             Integer.parseInt(System.getProperty(INDEX_SIZE_KEY, Integer.toString(INDEX_SIZE_DEFAULT))), 0);
+    }
+    
+    /**
+     * Only keeps the records written in the last window, the segment count 
+     * is the most memory it will ever use.
+     * @param windowMillis how long records are kept
+     */
+    public static FunctionAuditTrailOffHeap flightRecorder(long windowMillis) {
+        if (windowMillis<=0) {
+            throw new IllegalArgumentException("Flight recorder window must be positive but was "+windowMillis);
+        }
+        return new FunctionAuditTrailOffHeap(Integer.parseInt(System.getProperty(SEGMENTS_KEY, Integer.toString(SEGMENTS_DEFAULT))),
+                                             Integer.parseInt(System.getProperty(INDEX_SIZE_KEY, Integer.toString(INDEX_SIZE_DEFAULT))),
+                                             windowMillis);
+    }
+    
+    /**
+     * Holds the values audited by handle, they are only indexed when rendered
+     * so the index is kept small.
+     */
+    public static FunctionAuditTrailOffHeap forHandles() {
+        return new FunctionAuditTrailOffHeap(Integer.parseInt(System.getProperty(SEGMENTS_KEY, Integer.toString(SEGMENTS_DEFAULT))),
+                                             HANDLE_INDEX_SIZE, 0);
+    }
+    
+    /**
+     * @param segmentCount number of 64K record segments before the oldest are overwritten
+     * @param indexSize entries in the heap index, rounded up to a power of two
+     * @param window millis records are kept as a flight recorder, zero to keep them until overwritten
+     */
+    private FunctionAuditTrailOffHeap(int segmentCount, int indexSize, long window) {
+        if (segmentCount<=0 || segmentCount>SEGMENTS_MAX) {
+            throw new IllegalArgumentException(SEGMENTS_KEY+" must be from 1 to "+SEGMENTS_MAX+" but was "+segmentCount);
+        }
+        this.segments = new AtomicReferenceArray<ByteBuffer>(segmentCount);
+        this.capacity = ((long)segmentCount)<<SEGMENT_BITS;
+        this.seqs = new AtomicLongArray((int)capacity);
+        this.window = window;
+        int size = Integer.highestOneBit(Math.max(PROBES, indexSize-1)<<1);
+        this.index = new AtomicReferenceArray<Entry>(size);
+        this.indexMask = size-1;
+        logger.info("Off heap FunctionAuditTrail holds up to {} records in {} segments.",capacity,segmentCount);
+        if (window>0) {
+            logger.info("Off heap FunctionAuditTrail keeps the last {}ms as a flight recorder.",window);
+        }
+    }
+    
+    /**
+     * Segments are only allocated when a writer first reaches them, readers 
+     * use {@link #segmentOf(long)} and never allocate.
+     */
+    private final ByteBuffer allocated(int s) {
+        ByteBuffer segment = segments.get(s);
+        if (null == segment) {
+            //numbers left from a released segment must not match its new records
+            int position = s<<SEGMENT_BITS;
+            int i = SEGMENT_RECORDS;
+            while (--i>=0) {
+                seqs.set(position+i, UNKNOWN);
+            }
+            ByteBuffer temp = ByteBuffer.allocateDirect(SEGMENT_RECORDS*RECORD_BYTES);
+            if (segments.compareAndSet(s, null, temp)) {
+                logger.info("Off heap FunctionAuditTrail allocated segment {}",s);
+            }
+            segment = segments.get(s);
+        }
+        return segment;
+    }
+    
+    /**
+     * @return null if the segment was never allocated or has been released
+     */
+    private final ByteBuffer segmentOf(long seq) {
+        return segments.get(slot(seq));
+    }
+    
+    private final int slot(long seq) {
+        return position(seq)>>SEGMENT_BITS;
+    }
+    
+    private final int position(long seq) {
+        return (int)(seq % capacity);
+    }
+    
+    /**
+     * Marks the record of a newly claimed sequence as being written.
+     * @return segment for the record, stamped when this is a flight recorder,
+     * or null if it was released while this writer was stalled
+     */
+    private final ByteBuffer claim(long seq) {
+        if (window>0 && 0==(seq & SEGMENT_MASK)) {
+            release(seq);
+        }
+        ByteBuffer segment = segmentOf(seq);
+        if (null==segment) {
+            //only the current and previous segments are never released
+            if (next.get()-seq > SEGMENT_RECORDS) {
+                return null;
+            }
+            segment = allocated(slot(seq));
+        }
+        //also a read so none of the record is written before it
+        seqs.getAndSet(position(seq), ~seq);
+        if (window>0) {
+            segment.putLong(base(seq)+TIME, System.currentTimeMillis());
+        }
+        return segment;
+    }
+    
+    /**
+     * Readers only trust the record once its sequence number is set, unless
+     * a newer record claimed the position while this one was written.
+     */
+    private final void publish(long seq) {
+        seqs.compareAndSet(position(seq), ~seq, seq);
+    }
+    
+    /**
+     * Drops every segment whose newest record has left the window.  The 
+     * segment being started and the one before it may still have writers
+     * so they are never dropped.
+     */
+    private final void release(long seq) {
+        long now = System.currentTimeMillis();
+        int current = slot(seq);
+        ByteBuffer reused = segments.get(current);
+        if (null!=reused && !warned && now-newest(reused)<window) {
+            warned = true;
+            logger.warn("Flight recorder overwrites records younger than {}ms, raise {} to keep the whole window.",window,SEGMENTS_KEY);
+        }
+        if (now-lastRead<window) {
+            return;//a trail is being dumped, freeze until it is done
+        }
+        int previous = (current+segments.length()-1)%segments.length();
+        int s = segments.length();
+        while (--s>=0) {
+            ByteBuffer segment = segments.get(s);
+            if (s!=current && s!=previous && null!=segment && now-newest(segment)>=window) {
+                if (segments.compareAndSet(s, segment, null)) {
+                    logger.debug("Flight recorder released segment {}",s);
+                }
+            }
+        }
+    }
+    
+    private final static long newest(ByteBuffer segment) {
+        return segment.getLong(((SEGMENT_RECORDS-1)*RECORD_BYTES)+TIME);
+    }
+    
+    private final static int base(long seq) {
+        return ((int)seq & SEGMENT_MASK)*RECORD_BYTES;
+    }
+    
+    /**
+     * @return false if the record has been overwritten by a newer one, is 
+     * still being written or its segment has been released
+     */
+    private final boolean isLive(long seq) {
+        return seq>=0 && seq<next.get() && null!=segmentOf(seq) && seqs.get(position(seq))==seq;
+    }
+    
+    private final long indexOf(Number key) {
+        int bucket = System.identityHashCode(key) & indexMask;
+        int i = 0;
+        while (i<PROBES) {
+            Entry entry = index.get((bucket+i) & indexMask);
+            if (null==entry) {
+                return UNKNOWN;//never written past here
+            }
+            if (entry.get()==key) {
+                return entry.seq;
+            }
+            i++;
+        }
+        return UNKNOWN;
+    }
+    
+    /**
+     * Finds the live boxed value of a record if it is still in the index.
+     */
+    private final Number valueOf(long seq, int hash) {
+        int bucket = hash & indexMask;
+        int i = 0;
+        while (i<PROBES) {
+            Entry entry = index.get((bucket+i) & indexMask);
+            if (null==entry) {
+                return null;
+            }
+            if (entry.seq==seq) {
+                return entry.get();
+            }
+            i++;
+        }
+        return null;
+    }
+    
+    private final void index(Number number, long seq) {
+        Entry newEntry = new Entry(number, seq);
+        int bucket = System.identityHashCode(number) & indexMask;
+        int i = 0;
+        while (i<PROBES) {
+            int pos = (bucket+i) & indexMask;
+            Entry entry = index.get(pos);
+            if (null==entry || null==entry.get() || number==entry.get()) {
+                if (index.compareAndSet(pos, entry, newEntry)) {
+                    return;
+                }
+                continue;//lost the race, look at this entry again
+            }
+            i++;
+        }
+        //neighborhood is full of live values, replace one of them
+        index.set((bucket+((int)seq&(PROBES-1))) & indexMask, newEntry);
+    }
+
+    public final Function get(Number key) {
+        long seq = indexOf(key);
+        return isLive(seq) ? view(seq, key) : null;
+    }
+    
+    /**
+     * Params of startHere are found through the parent sequence recorded 
+     * with them so they can be followed after the value was collected.
+     */
+    public final Function get(Number key, Function startHere) {
+        long seq = null!=key ? startHere.getPrivateSequence() : UNKNOWN;
+        if (seq>=0 && !isLive(seq)) {
+            //its params are gone with it, the key may still be indexed
+            Function fun = get(key);
+            return null!=fun ? fun : new Function(key, Function.EVICTED);
+        }
+        ByteBuffer segment = seq>=0 ? segmentOf(seq) : null;
+        if (null!=segment) {
+            int base = base(seq);
+            int arity = segment.get(base+ARITY);
+            //the param itself if it is still alive
+            int p = arity;
+            while (--p>=0) {
+                long parent = segment.getLong(base+PARENTS+(p<<3));
+                if (isLive(parent) && key==valueOf(parent, hashOf(parent))) {
+                    return view(parent, key);
+                }
+            }
+            //otherwise a param with the same value, as built by view, its 
+            //record may have been overwritten
+            byte kind = NumberBits.kind(key);
+            long bits = NumberBits.bits(key, kind);
+            p = arity;
+            while (--p>=0) {
+                long parent = segment.getLong(base+PARENTS+(p<<3));
+                if (segment.get(base+PARAM_KINDS+p)==kind &&
+                    segment.getLong(base+PARAM_VALUES+(p<<3))==bits &&
+                    parent>=0) {
+                    return isLive(parent) ? view(parent, key) : new Function(key, Function.EVICTED);
+                }
+            }
+        }
+        return get(key);
+    }
+    
+    /**
+     * @return identity hash the value of a record was indexed with, 0 once
+     * its segment has been released
+     */
+    private final int hashOf(long seq) {
+        ByteBuffer segment = segmentOf(seq);
+        return null==segment ? 0 : segment.getInt(base(seq)+HASH);
+    }
+    
+    /**
+     * Builds the Function for one record, params that are still alive are
+     * returned as themselves so the trail keeps their identity.  The others
+     * are boxed again from their bits.
+     */
+    private final Function view(long seq, Number key) {
+        if (window>0) {
+            lastRead = System.currentTimeMillis();
+        }
+        ByteBuffer segment = segmentOf(seq);
+        if (null==segment) {
+            return null;
+        }
+        int base = base(seq);
+        int arity = segment.get(base+ARITY);
+        Number[] params = new Number[arity];
+        int p = arity;
+        while (--p>=0) {
+            long parent = segment.getLong(base+PARENTS+(p<<3));
+            Number param = null;
+            if (parent==seq) {
+                param = key;
+            } else if (isLive(parent)) {
+                param = valueOf(parent, hashOf(parent));
+            }
+            if (null==param) {
+                param = NumberBits.box(segment.get(base+PARAM_KINDS+p), segment.getLong(base+PARAM_VALUES+(p<<3)));
+            }
+            params[p] = param;
+        }
+        int labelId = segment.getInt(base+LABEL);
+        Function fun = new Function(position(seq),
+                                    seq,
+                                    labelId,
+                                    labels.label(labelId), 
+                                    templates.value(segment.getInt(base+TEMPLATE)),
+                                    params);
+        //overwritten or released while reading so this view can not be trusted
+        return isLive(seq) && segment==segmentOf(seq) ? fun : null;
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression) {
+        return store(number, label, expression, 0, null, null, null, null, null, null, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1) {
+        return store(number, label, expression, 1, p1, null, null, null, null, null, null);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2) {
+        return store(number, label, expression, 2, p1, p2, null, null, null, null, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3) {
+        return store(number, label, expression, 3, p1, p2, p3, null, null, null, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4) {
+        return store(number, label, expression, 4, p1, p2, p3, p4, null, null, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        return store(number, label, expression, 5, p1, p2, p3, p4, p5, null, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        return store(number, label, expression, 6, p1, p2, p3, p4, p5, p6, null);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        return store(number, label, expression, 7, p1, p2, p3, p4, p5, p6, p7);
+    }
+    
+    @Override
+    public final boolean save(Number number, String label, String expression, Number[] params) {
+        int n = params.length;
+        return store(number, label, expression, n, 
+                     n>0 ? params[0] : null, n>1 ? params[1] : null, n>2 ? params[2] : null, 
+                     n>3 ? params[3] : null, n>4 ? params[4] : null, n>5 ? params[5] : null,
+                     n>6 ? params[6] : null);
+    }
+    
+    /**
+     * Every record gets the next sequence number so writers never wait on 
+     * each other, only the index is shared and it is updated with a CAS.
+     */
+    private final boolean store(Number number, String label, String expression, int count,
+                                Number p0, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        int labelId = labels.record(label, expression, number);
+        long seq = next.getAndIncrement();
+        ByteBuffer segment = claim(seq);
+        if (null==segment) {
+            return false;
+        }
+        int base = base(seq);
+        
+        byte kind = NumberBits.kind(number);
+        segment.putLong(base+VALUE, NumberBits.bits(number, kind));
+        segment.putInt(base+LABEL, labelId);
+        segment.putInt(base+TEMPLATE, templates.id(expression));
+        segment.putInt(base+HASH, System.identityHashCode(number));
+        segment.put(base+KIND, kind);
+        segment.put(base+ARITY, (byte)count);
+        param(segment, base, seq, 0, number, p0);
+        param(segment, base, seq, 1, number, p1);
+        param(segment, base, seq, 2, number, p2);
+        param(segment, base, seq, 3, number, p3);
+        param(segment, base, seq, 4, number, p4);
+        param(segment, base, seq, 5, number, p5);
+        param(segment, base, seq, 6, number, p6);
+        publish(seq);
+        
+        index(number, seq);
+        return true;
+    }
+    
+    private final void param(ByteBuffer segment, int base, long seq, int p, Number number, Number param) {
+        byte kind = NumberBits.kind(param);
+        segment.putLong(base+PARENTS+(p<<3), param==number ? seq : (null==param ? UNKNOWN : indexOf(param)));
+        segment.putLong(base+PARAM_VALUES+(p<<3), NumberBits.bits(param, kind));
+        segment.put(base+PARAM_KINDS+p, kind);
+    }
+    
+    /**
+     * Records a value audited under a label alone, it is its own param.
+     * @return handle of the record
+     */
+    public final long store(double value, String label) {
+        int labelId = labels.record(label, PFImpl.LABEL_WRAP, value);
+        long seq = next.getAndIncrement();
+        ByteBuffer segment = claim(seq);
+        if (null==segment) {
+            return seq;//never live
+        }
+        int base = base(seq);
+        header(segment, base, value, labelId, PFImpl.LABEL_WRAP, 1);
+        segment.putLong(base+PARENTS, seq);
+        segment.putLong(base+PARAM_VALUES, Double.doubleToRawLongBits(value));
+        segment.put(base+PARAM_KINDS, NumberBits.DOUBLE);
+        publish(seq);
+        return seq;
+    }
+    
+    /**
+     * Records a value computed from params audited by handle, nothing is
+     * allocated and the index is left alone.
+     * @return handle of the record
+     */
+    public final long store(double value, String label, String expression, int count,
+                            AuditedDouble p0, AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, 
+                            AuditedDouble p4, AuditedDouble p5, AuditedDouble p6) {
+        int labelId = labels.record(label, expression, value);
+        long seq = next.getAndIncrement();
+        ByteBuffer segment = claim(seq);
+        if (null==segment) {
+            return seq;//never live
+        }
+        int base = base(seq);
+        header(segment, base, value, labelId, expression, count);
+        param(segment, base, 0, p0);
+        param(segment, base, 1, p1);
+        param(segment, base, 2, p2);
+        param(segment, base, 3, p3);
+        param(segment, base, 4, p4);
+        param(segment, base, 5, p5);
+        param(segment, base, 6, p6);
+        publish(seq);
+        return seq;
+    }
+    
+    private final void header(ByteBuffer segment, int base, double value, int labelId, String expression, int count) {
+        segment.putLong(base+VALUE, Double.doubleToRawLongBits(value));
+        segment.putInt(base+LABEL, labelId);
+        segment.putInt(base+TEMPLATE, templates.id(expression));
+        segment.putInt(base+HASH, 0);//not indexed until rendered
+        segment.put(base+KIND, NumberBits.DOUBLE);
+        segment.put(base+ARITY, (byte)count);
+    }
+    
+    private final void param(ByteBuffer segment, int base, int p, AuditedDouble param) {
+        if (null == param) {
+            segment.putLong(base+PARENTS+(p<<3), UNKNOWN);
+            segment.put(base+PARAM_KINDS+p, NumberBits.NULL);
+        } else {
+            segment.putLong(base+PARENTS+(p<<3), param.handle());
+            segment.putLong(base+PARAM_VALUES+(p<<3), Double.doubleToRawLongBits(param.value()));
+            segment.put(base+PARAM_KINDS+p, NumberBits.DOUBLE);
+        }
+    }
+    
+    /**
+     * Boxes the value of a handle and indexes it so the trail can be rendered
+     * from it like any other key.
+     * @return null if the record has been overwritten
+     */
+    public final Number keyOf(long handle) {
+        ByteBuffer segment = isLive(handle) ? segmentOf(handle) : null;
+        if (null==segment) {
+            return null;
+        }
+        int base = base(handle);
+        Number key = NumberBits.box(segment.get(base+KIND), segment.getLong(base+VALUE));
+        segment.putInt(base+HASH, System.identityHashCode(key));
+        index(key, handle);
+        return key;
+    }
+    
+    public final boolean isRecorded(Number key) {
+        return isLive(indexOf(key));
+    }
+    
+    public final FunMetaData metaData(Function fun) {
+        return fun.labelId()>=0 ? labels.metaData(fun.labelId()) : labels.metaData(fun.labelName());
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        return labels.stats(label);
+    }
+
+    @Override
+    public boolean continueAuditTo(String channelId, Number boxed) {
+        // not sure this implementation can use this for anything
+        return true;
+    }
+
+    @Override
+    public boolean continueAuditFrom(String channelId, Number boxed) {
+        save(boxed, "Channel:"+channelId, PFImpl.LABEL_WRAP, boxed);
+        return true;
+    }
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In memory audit trail where every thread saves into its own segment, so
+ * the save path never writes to anything shared with other threads.  
+ * Lookups are rare and must search across all the segments.
+ */
+public class FunctionAuditTrailSegmented implements FunctionAuditTrail {
+
+    //Each thread gets one of these, it will grow as needed.
+    private final static int SEGMENT_INITIAL_SIZE = 1<<16;//64K elements;
+    private final static String SEGMENT_INITIAL_SIZE_KEY = "purefat.segment.size";
+    
+    private static final Logger logger = LoggerFactory.getLogger(FunctionAuditTrailSegmented.class);
+    
+    private final int initialSize;
+    private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<Segment>();
+    //only claimed by the first save, threads that just read never own a segment
+    private final ThreadLocal<Segment> localSegment = new ThreadLocal<Segment>();
+    
+    private final LabelRegistry labels = new LabelRegistry(true);
+    
+    /**
+     * Only the owning thread writes to a segment.  The arrays are replaced 
+     * as a pair when grown so readers on other threads always see a 
+     * consistent view of everything saved before the value was handed off.
+     */
+    private static final class Segment {
+        private volatile WeakReference<Thread> owner;
+        private volatile WeakReference<Number>[] bufferRefs;
+        private volatile Function[]              funcShell;
+        private int                              lastBufferSize;
+        private int                              bufferPos;
+        
+        @SuppressWarnings("unchecked")
+        private Segment(Thread owner, int size) {
+            this.owner = new WeakReference<Thread>(owner);
+            Function[] shells = new Function[size];
+            int j = size;
+            while (--j>=0) {
+                shells[j] = new Function(j);
+            }
+            this.funcShell = shells;
+            this.bufferRefs = (WeakReference<Number>[])new WeakReference<?>[size];
+            this.lastBufferSize = size;
+        }
+        
+        private boolean isOrphan() {
+            Thread t = owner.get();
+            return null==t || !t.isAlive();
+        }
+        
+        /**
+         * Looks forward for the next empty slot, this is only ever called by 
+         * the owning thread.
+         */
+        private Function findFuncShell(Number number) {
+            WeakReference<Number>[] refs = bufferRefs;
+            int size = refs.length;
+            int i = bufferPos;
+            int j = size;
+            while (--j>=0) {
+                if (++i==size) {
+                    i = 0;
+                }
+                if (null==refs[i] || null==refs[i].get()) {
+                    refs[i] = new WeakReference<Number>(number);
+                    bufferPos = i;
+                    return funcShell[i];
+                }
+            }
+            //looped back to the original position, every slot is in use
+            i = size;
+            grow();
+            bufferRefs[i] = new WeakReference<Number>(number);
+            bufferPos = i;
+            return funcShell[i];
+        }
+        
+        /**
+         * Grow the arrays with fibonacci, no other thread ever writes here so
+         * the copy can not lose anything.
+         */
+        private void grow() {
+            int size = bufferRefs.length;
+            int newBufferSize = lastBufferSize + size;
+            logger.info("growing segment to {} for {}",newBufferSize, Thread.currentThread().getName());
+            
+            @SuppressWarnings("unchecked")
+            WeakReference<Number>[] newBufferRefs = (WeakReference<Number>[])new WeakReference<?>[newBufferSize];
+            Function[] newBufferExpr = new Function[newBufferSize];
+            System.arraycopy(bufferRefs, 0, newBufferRefs, 0, size);
+            System.arraycopy(funcShell, 0, newBufferExpr, 0, size);
+            int j = newBufferSize;
+            while (--j>=size) {
+                newBufferExpr[j] = new Function(j);
+            }
+            //shells first so any reader that sees the new refs also sees them
+            funcShell = newBufferExpr;
+            bufferRefs = newBufferRefs;
+            lastBufferSize = size;
+        }
+        
+        /**
+         * Searches back from the given position because recent values are
+         * the most likely to be requested.
+         */
+        private Function get(Number key, int startLookingFrom) {
+            Function[] shells = funcShell;
+            WeakReference<Number>[] refs = bufferRefs;
+            int size = Math.min(refs.length, shells.length);
+            int start = (startLookingFrom<0 || startLookingFrom>=size) ? Math.min(bufferPos, size-1) : startLookingFrom;
+            int i = start;
+            do {
+                WeakReference<Number> ref = refs[i];
+                if (null!=ref && ref.get()==key) {
+                    return shells[i];
+                }
+                if (--i<0) {
+                    i = size-1;
+                }
+            } while (i!=start);
+            return null;
+        }
+        
+        private boolean contains(Function fun) {
+            int idx = fun.getPrivateIndex();
+            Function[] shells = funcShell;
+            return idx>=0 && idx<shells.length && shells[idx]==fun;
+        }
+    }
+    
+    public FunctionAuditTrailSegmented() {
+        this(Integer.parseInt(System.getProperty(SEGMENT_INITIAL_SIZE_KEY, Integer.toString(SEGMENT_INITIAL_SIZE))));
+    }
+    
+    private FunctionAuditTrailSegmented(int initialSize) {
+        this.initialSize = initialSize;
+    }
+    
+    /**
+     * @return segment of the current thread, claimed on its first save
+     */
+    private Segment localSegment() {
+        Segment local = localSegment.get();
+        if (null == local) {
+            local = claimSegment();
+            localSegment.set(local);
+        }
+        return local;
+    }
+    
+    /**
+     * Called once per thread, reuses the segment of a thread that has 
+     * finished so pools that replace their threads do not leak segments.
+     */
+    private Segment claimSegment() {
+        Thread current = Thread.currentThread();
+        synchronized(segments) {
+            for (Segment segment : segments) {
+                if (segment.isOrphan()) {
+                    segment.owner = new WeakReference<Thread>(current);
+                    return segment;
+                }
+            }
+            Segment segment = new Segment(current, initialSize);
+            segments.add(segment);
+            logger.info("Segmented FunctionAuditTrail added segment {} with {} elements.",segments.size(),initialSize);
+            return segment;
+        }
+    }
+
+    @Override
+    public final Function get(Number key) {
+        Segment local = localSegment.get();
+        if (null!=local) {
+            Function fun = local.get(key, -1);
+            if (null!=fun) {
+                return fun;
+            }
+        }
+        return getFromOthers(key, local);
+    }
+
+    @Override
+    public final Function get(Number key, Function startHere) {
+        for (Segment segment : segments) {
+            if (segment.contains(startHere)) {
+                Function fun = segment.get(key, startHere.getPrivateIndex());
+                if (null!=fun) {
+                    return fun;
+                }
+                return getFromOthers(key, segment);
+            }
+        }
+        return get(key);
+    }
+    
+    private final Function getFromOthers(Number key, Segment skip) {
+        for (Segment segment : segments) {
+            if (segment!=skip) {
+                Function fun = segment.get(key, -1);
+                if (null!=fun) {
+                    return fun;
+                }
+            }
+        }
+        return null;//not found, looked everywhere
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2, p3);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2, p3, p4);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2, p3, p4, p5);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2, p3, p4, p5, p6);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, p1, p2, p3, p4, p5, p6, p7);
+    }
+
+    @Override
+    public final boolean save(Number number, String label, String expression, Number[] params) {
+        labels.record(label, expression, number);
+        return localSegment().findFuncShell(number).init(label, expression, params);
+    }
+
+    /**
+     * There is no index so this searches every segment like get.
+     */
+    @Override
+    public final boolean isRecorded(Number key) {
+        return null!=get(key);
+    }
+    
+    public final FunMetaData metaData(Function fun) {
+        return labels.metaData(fun.labelName());
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        return labels.stats(label);
+    }
+
+    @Override
+    public boolean continueAuditTo(String channelId, Number boxed) {
+        // not sure this implementation can use this for anything
+        return true;
+    }
+
+    @Override
+    public boolean continueAuditFrom(String channelId, Number boxed) {
+        save(boxed, "Channel:"+channelId, PFImpl.LABEL_WRAP, boxed);
+        return true;
+    }
+
+}
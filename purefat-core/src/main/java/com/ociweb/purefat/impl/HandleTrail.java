@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+/**
+ * Off heap trail for the values audited by handle.  Their records are linked
+ * by handle so only an off heap trail can hold them, the audit trail itself
+ * when it is one, otherwise a trail of their own made on first use so no
+ * direct memory is taken until a handle is audited.
+ */
+public class HandleTrail {
+
+    private volatile FunctionAuditTrailOffHeap trail;
+    
+    /**
+     * Makes its own trail the first time a handle is audited.
+     */
+    public HandleTrail() {
+    }
+    
+    /**
+     * @param trail the audit trail, handles are recorded along with the other values
+     */
+    public HandleTrail(FunctionAuditTrailOffHeap trail) {
+        this.trail = trail;
+    }
+    
+    /**
+     * @return the trail, made now if no handle was audited before
+     */
+    public final FunctionAuditTrailOffHeap trail() {
+        FunctionAuditTrailOffHeap result = trail;
+        if (null == result) {
+            synchronized (this) {
+                result = trail;
+                if (null == result) {
+                    result = trail = FunctionAuditTrailOffHeap.forHandles();
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return null if no handle has been audited so there is nothing to read
+     */
+    public final FunctionAuditTrailOffHeap existing() {
+        return trail;
+    }
+    
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+/**
+ * Counts of the values saved under one label in fixed log scaled buckets.
+ * Each power of two from 2^-32 up to 2^32 is split in two buckets for each
+ * sign, everything smaller or larger falls in one underflow or overflow 
+ * bucket on that side.  Zero, NaN and both infinities get their own.
+ * 
+ * Buckets are ordered from negative infinity up to positive infinity with
+ * NaN last.  Instances are snapshots taken from {@link LabelStats}.
+ */
+public final class Histogram {
+
+    private final static int EXP_MIN = -32;
+    private final static int EXP_MAX = 32; //exclusive
+    private final static int SIDE = (EXP_MAX-EXP_MIN)<<1;
+    
+    public final static int NEGATIVE_INFINITY = 0;
+    public final static int NEGATIVE_OVERFLOW = 1;
+    public final static int NEGATIVE_UNDERFLOW = 2+SIDE;
+    public final static int ZERO = NEGATIVE_UNDERFLOW+1;
+    public final static int POSITIVE_UNDERFLOW = ZERO+1;
+    public final static int POSITIVE_OVERFLOW = POSITIVE_UNDERFLOW+1+SIDE;
+    public final static int POSITIVE_INFINITY = POSITIVE_OVERFLOW+1;
+    public final static int NAN = POSITIVE_INFINITY+1;
+    public final static int BUCKETS = NAN+1;
+    
+    private final long[] counts;
+    
+    Histogram(long[] counts) {
+        this.counts = counts;
+    }
+    
+    /**
+     * Only the exponent and the top bit of the mantissa are needed so this
+     * never allocates or takes a log.
+     */
+    static final int bucket(double value) {
+        if (Double.isNaN(value)) {
+            return NAN;
+        }
+        if (Double.isInfinite(value)) {
+            return value>0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY;
+        }
+        if (0d == value) {
+            return ZERO;
+        }
+        int exp = Math.getExponent(value);
+        boolean negative = value < 0;
+        if (exp < EXP_MIN) {
+            return negative ? NEGATIVE_UNDERFLOW : POSITIVE_UNDERFLOW;
+        }
+        if (exp >= EXP_MAX) {
+            return negative ? NEGATIVE_OVERFLOW : POSITIVE_OVERFLOW;
+        }
+        int step = ((exp-EXP_MIN)<<1) + (int)((Double.doubleToRawLongBits(value)>>>51)&1);
+        return negative ? NEGATIVE_UNDERFLOW-1-step : POSITIVE_UNDERFLOW+1+step;
+    }
+    
+    /**
+     * @return magnitude of the low end of a bucket on the positive side
+     */
+    private static final double magnitude(int step) {
+        return Math.scalb(1d + (0.5d*(step&1)), (step>>1)+EXP_MIN);
+    }
+    
+    /**
+     * @return smallest value that falls in the bucket
+     */
+    public static final double lowerBound(int bucket) {
+        if (bucket>=NAN) {
+            return Double.NaN;
+        }
+        if (bucket<=NEGATIVE_OVERFLOW) {
+            return bucket==NEGATIVE_OVERFLOW ? -Double.MAX_VALUE : Double.NEGATIVE_INFINITY;
+        }
+        if (bucket<ZERO) {
+            return -upperMagnitude(NEGATIVE_UNDERFLOW-bucket);
+        }
+        if (bucket<=POSITIVE_UNDERFLOW) {
+            return 0d;
+        }
+        return magnitude(bucket-POSITIVE_UNDERFLOW-1);
+    }
+    
+    /**
+     * @return value at the top of the bucket, only the infinities, zero 
+     *         and the overflow buckets include it
+     */
+    public static final double upperBound(int bucket) {
+        if (bucket>=NAN) {
+            return Double.NaN;
+        }
+        if (bucket>=POSITIVE_OVERFLOW) {
+            return bucket==POSITIVE_OVERFLOW ? Double.MAX_VALUE : Double.POSITIVE_INFINITY;
+        }
+        if (bucket>ZERO) {
+            return upperMagnitude(bucket-POSITIVE_UNDERFLOW);
+        }
+        if (bucket>=NEGATIVE_UNDERFLOW) {
+            return 0d;
+        }
+        return -magnitude(NEGATIVE_UNDERFLOW-1-bucket);
+    }
+    
+    /**
+     * @param n buckets out from zero, 0 is the underflow bucket
+     */
+    private static final double upperMagnitude(int n) {
+        return n>=SIDE ? Math.scalb(1d, EXP_MAX) : magnitude(n);
+    }
+    
+    public int buckets() {
+        return BUCKETS;
+    }
+    
+    public long count(int bucket) {
+        return counts[bucket];
+    }
+    
+    public long total() {
+        long total = 0;
+        int i = BUCKETS;
+        while (--i>=0) {
+            total += counts[i];
+        }
+        return total;
+    }
+    
+    /**
+     * @return range of the bucket for display, eg [192.0,256.0)
+     */
+    public static final String range(int bucket) {
+        switch (bucket) {
+            case NAN:
+                return "NaN";
+            case NEGATIVE_INFINITY:
+                return "-Infinity";
+            case POSITIVE_INFINITY:
+                return "Infinity";
+            case ZERO:
+                return "0";
+            case NEGATIVE_UNDERFLOW:
+            case POSITIVE_UNDERFLOW:
+                return "("+lowerBound(bucket)+','+upperBound(bucket)+')';
+            case NEGATIVE_OVERFLOW:
+            case POSITIVE_OVERFLOW:
+                return "["+lowerBound(bucket)+','+upperBound(bucket)+']';
+            default:
+                return bucket<ZERO ? "("+lowerBound(bucket)+','+upperBound(bucket)+']'
+                                   : "["+lowerBound(bucket)+','+upperBound(bucket)+')';
+        }
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        int i = 0;
+        while (i<BUCKETS) {
+            if (counts[i]>0) {
+                if (builder.length()>0) {
+                    builder.append(' ');
+                }
+                builder.append(range(i)).append('=').append(counts[i]);
+            }
+            i++;
+        }
+        return builder.toString();
+    }
+    
+}
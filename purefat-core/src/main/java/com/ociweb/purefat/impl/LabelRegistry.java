@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.purefat.LabelCatalog;
+
+/**
+ * Gives each distinct label a dense int id the first time it is saved and 
+ * keeps the meta data captured at that call site and the stats of its 
+ * values under the same id.  Ids are shared by every registry of labels and
+ * never reused.  A label passed as the same literal every time is resolved
+ * by its identity, so saves do not hash it, everything after that is an 
+ * array index.
+ * 
+ * Labels found in a generated {@link LabelCatalog} are registered up front
+ * in catalog order, they were checked when compiled so the stack is never
+ * captured and the uniqueness check is skipped.
+ */
+final class LabelRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(LabelRegistry.class);
+    
+    private static final LabelCatalog[] CATALOGS = loadCatalogs();
+    
+    //label ids are the same in every trail
+    private static final StringTable LABELS = new StringTable();
+    
+    //ids below this came from a catalog
+    private static final int CATALOGED = registerCatalogs();
+    
+    private final StringTable ids;
+    private volatile FunMetaData[] meta = new FunMetaData[64];
+    private volatile LabelStats[] stats = new LabelStats[64];
+    
+    private final int cataloged;
+    
+    /**
+     * @param useCatalogs false for registries of something other than labels
+     */
+    LabelRegistry(boolean useCatalogs) {
+        if (useCatalogs) {
+            ids = LABELS;
+            cataloged = CATALOGED;
+            for (LabelCatalog catalog : CATALOGS) {
+                String[] labels = catalog.labels();
+                String[] templates = catalog.templates();
+                StackTraceElement[] callSites = catalog.callSites();
+                int i = 0;
+                while (i<labels.length) {
+                    int id = ids.id(labels[i]);
+                    if (!isRegistered(id)) {
+                        add(id, new FunMetaData(callSites[i],labels[i],templates[i]));
+                    }
+                    i++;
+                }
+            }
+        } else {
+            ids = new StringTable();
+            cataloged = 0;
+        }
+    }
+    
+    private static final LabelCatalog[] loadCatalogs() {
+        List<LabelCatalog> catalogs = new ArrayList<LabelCatalog>();
+        Iterator<LabelCatalog> iterator = ServiceLoader.load(LabelCatalog.class).iterator();
+        try {
+            while (iterator.hasNext()) {
+                catalogs.add(iterator.next());
+            }
+        } catch (ServiceConfigurationError error) {
+            //labels will be found as they are saved instead
+            logger.warn("unable to load label catalog", error);
+        }
+        return catalogs.toArray(new LabelCatalog[catalogs.size()]);
+    }
+    
+    private static final int registerCatalogs() {
+        for (LabelCatalog catalog : CATALOGS) {
+            for (String label : catalog.labels()) {
+                LABELS.id(label);
+            }
+        }
+        return LABELS.size();
+    }
+    
+    private final boolean isRegistered(int id) {
+        FunMetaData[] m = meta;
+        return id<m.length && null!=m[id];
+    }
+    
+    /**
+     * @return id of the label, registered with the call site of the caller
+     *         if this is the first time it was seen
+     */
+    final int register(String label, String expressionText) {
+        int id = ids.id(label);
+        FunMetaData[] m = meta;
+        if (id<m.length && null!=m[id]) {
+            assert(id<cataloged || isSame(m[id], expressionText)) : "The label "+label+" is not unique within the project. Check: "+m[id].stackElement();
+            return id;
+        }
+        //only once per label so the stack trace is affordable
+        return add(id, new FunMetaData(Thread.currentThread().getStackTrace(),label,expressionText));
+    }
+    
+    private final synchronized int add(int id, FunMetaData funMeta) {
+        FunMetaData[] m = meta;
+        LabelStats[] st = stats;
+        if (id<m.length && null!=m[id]) {
+            return id;//another thread registered it first
+        }
+        if (id>=m.length) {
+            int length = m.length;
+            while (id>=length) {
+                length <<= 1;
+            }
+            FunMetaData[] temp = new FunMetaData[length];
+            System.arraycopy(m, 0, temp, 0, m.length);
+            m = temp;
+            LabelStats[] tempStats = new LabelStats[length];
+            System.arraycopy(st, 0, tempStats, 0, st.length);
+            st = tempStats;
+        }
+        st[id] = new LabelStats();
+        m[id] = funMeta;
+        //publish the stats before the meta data marks the id as registered
+        stats = st;
+        meta = m;
+        return id;
+    }
+    
+    /**
+     * Registers the label if needed and adds the value to its stats.
+     * @return id of the label
+     */
+    final int record(String label, String expressionText, Number value) {
+        int id = register(label, expressionText);
+        if (null != value) {
+            stats[id].record(value);
+        }
+        return id;
+    }
+    
+    final int record(String label, String expressionText, double value) {
+        int id = register(label, expressionText);
+        stats[id].record(value);
+        return id;
+    }
+    
+    private static final boolean isSame(FunMetaData funMeta, String expressionText) {
+        //templates are almost always the same literal
+        return funMeta.expression()==expressionText || funMeta.expression().equals(expressionText);
+    }
+    
+    final String label(int id) {
+        return meta[id].label();
+    }
+    
+    final FunMetaData metaData(int id) {
+        return meta[id];
+    }
+    
+    /**
+     * @return null if nothing has been saved under the label
+     */
+    final LabelStats stats(String label) {
+        int id = ids.find(label);
+        LabelStats[] st = stats;
+        return id<0 || id>=st.length ? null : st[id];
+    }
+    
+    final FunMetaData metaData(String label) {
+        int id = ids.find(label);
+        FunMetaData[] m = meta;
+        return id<0 || id>=m.length || null==m[id] ? FunMetaData.NONE : m[id];
+    }
+    
+}
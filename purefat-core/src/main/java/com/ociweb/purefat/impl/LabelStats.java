@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Running count, min, max, mean, standard deviation and histogram of every
+ * value saved under one label.  These are kept apart from the records so they still 
+ * cover values whose records have been evicted or collected.
+ * 
+ * Each thread starts at its own cell and takes it with a CAS, a cell that is
+ * already taken is skipped for the next one so the save path never waits.
+ * The cells are only merged when the stats are read.  Values that are NaN or 
+ * infinite are counted but left out of the moments.
+ */
+public final class LabelStats {
+
+    private final static int STRIPES = 16;//power of 2
+    
+    private final AtomicReferenceArray<Cell> cells = new AtomicReferenceArray<Cell>(STRIPES);
+    
+    private static final class Cell {
+        private final AtomicBoolean taken = new AtomicBoolean();
+        private long   count;
+        private long   finite;
+        private double mean;
+        private double m2; //sum of squared distance from the mean
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private final long[] buckets = new long[Histogram.BUCKETS];
+    }
+    
+    LabelStats() {
+    }
+    
+    private final Cell cell(int i) {
+        Cell cell = cells.get(i);
+        if (null == cell) {
+            cells.compareAndSet(i, null, new Cell());
+            cell = cells.get(i);
+        }
+        return cell;
+    }
+    
+    final void record(Number value) {
+        record(value.doubleValue());
+    }
+    
+    final void record(double v) {
+        int i = (int)Thread.currentThread().getId();
+        Cell cell = cell(i & (STRIPES-1));
+        while (!cell.taken.compareAndSet(false, true)) {
+            //another thread has it, move on instead of waiting
+            cell = cell(++i & (STRIPES-1));
+        }
+        try {
+            cell.count++;
+            cell.buckets[Histogram.bucket(v)]++;
+            if (!Double.isNaN(v) && !Double.isInfinite(v)) {
+                //Welford, stable without keeping a sum of squares
+                cell.finite++;
+                double delta = v - cell.mean;
+                cell.mean += delta/cell.finite;
+                cell.m2 += delta*(v - cell.mean);
+                if (v < cell.min) {
+                    cell.min = v;
+                }
+                if (v > cell.max) {
+                    cell.max = v;
+                }
+            }
+        } finally {
+            cell.taken.set(false);
+        }
+    }
+    
+    /**
+     * Readers wait for the cell, only for as long as one record takes.
+     */
+    private static final void take(Cell cell) {
+        while (!cell.taken.compareAndSet(false, true)) {
+            Thread.yield();
+        }
+    }
+    
+    /**
+     * Combines the cells into one, the moments are merged pairwise the same
+     * way they were accumulated.
+     */
+    private final Cell merged() {
+        Cell total = new Cell();
+        int i = STRIPES;
+        while (--i>=0) {
+            Cell cell = cells.get(i);
+            if (null != cell) {
+                take(cell);
+                try {
+                    total.count += cell.count;
+                    if (cell.finite > 0) {
+                        long n = total.finite + cell.finite;
+                        double delta = cell.mean - total.mean;
+                        total.mean += delta*cell.finite/n;
+                        total.m2 += cell.m2 + delta*delta*total.finite*cell.finite/n;
+                        total.finite = n;
+                        total.min = Math.min(total.min, cell.min);
+                        total.max = Math.max(total.max, cell.max);
+                    }
+                } finally {
+                    cell.taken.set(false);
+                }
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * @return counts of the values in log scaled buckets
+     */
+    public Histogram histogram() {
+        long[] counts = new long[Histogram.BUCKETS];
+        int i = STRIPES;
+        while (--i>=0) {
+            Cell cell = cells.get(i);
+            if (null != cell) {
+                take(cell);
+                try {
+                    int b = Histogram.BUCKETS;
+                    while (--b>=0) {
+                        counts[b] += cell.buckets[b];
+                    }
+                } finally {
+                    cell.taken.set(false);
+                }
+            }
+        }
+        return new Histogram(counts);
+    }
+    
+    public long count() {
+        return merged().count;
+    }
+    
+    /**
+     * @return values that were NaN or infinite
+     */
+    public long nonFinite() {
+        Cell total = merged();
+        return total.count - total.finite;
+    }
+    
+    /**
+     * @return NaN if no finite value was saved
+     */
+    public double min() {
+        Cell total = merged();
+        return 0==total.finite ? Double.NaN : total.min;
+    }
+    
+    /**
+     * @return NaN if no finite value was saved
+     */
+    public double max() {
+        Cell total = merged();
+        return 0==total.finite ? Double.NaN : total.max;
+    }
+    
+    /**
+     * @return NaN if no finite value was saved
+     */
+    public double mean() {
+        Cell total = merged();
+        return 0==total.finite ? Double.NaN : total.mean;
+    }
+    
+    /**
+     * @return sample standard deviation, zero until two finite values are saved
+     */
+    public double stdDev() {
+        Cell total = merged();
+        return total.finite<2 ? 0d : Math.sqrt(total.m2/(total.finite-1));
+    }
+    
+    @Override
+    public String toString() {
+        Cell total = merged();
+        StringBuilder builder = new StringBuilder();
+        builder.append("n=").append(total.count);
+        if (total.finite > 0) {
+            builder.append(" min=").append(total.min)
+                   .append(" max=").append(total.max)
+                   .append(" mean=").append(total.mean)
+                   .append(" sd=").append(total.finite<2 ? 0d : Math.sqrt(total.m2/(total.finite-1)));
+        }
+        if (total.count > total.finite) {
+            builder.append(" nonFinite=").append(total.count - total.finite);
+        }
+        return builder.toString();
+    }
+    
+}
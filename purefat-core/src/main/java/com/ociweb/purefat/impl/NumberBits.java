@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+/**
+ * Captures a boxed value as a kind and 64 bits so records can be kept 
+ * without holding on to the value, and boxes it again when a trail is 
+ * rendered.
+ */
+final class NumberBits {
+
+    //kinds of Number, all others are kept as their double value
+    static final byte NULL    = 0;
+    static final byte DOUBLE  = 1;
+    static final byte FLOAT   = 2;
+    static final byte LONG    = 3;
+    static final byte INTEGER = 4;
+    static final byte SHORT   = 5;
+    static final byte BYTE    = 6;
+    static final byte OTHER   = 7;
+    
+    private NumberBits() {
+    }
+    
+    static final byte kind(Number number) {
+        if (null==number) {
+            return NULL;
+        }
+        if (number instanceof Double) {
+            return DOUBLE;
+        }
+        if (number instanceof Integer) {
+            return INTEGER;
+        }
+        if (number instanceof Long) {
+            return LONG;
+        }
+        if (number instanceof Float) {
+            return FLOAT;
+        }
+        if (number instanceof Short) {
+            return SHORT;
+        }
+        if (number instanceof Byte) {
+            return BYTE;
+        }
+        return OTHER;
+    }
+    
+    static final long bits(Number number, byte kind) {
+        switch (kind) {
+            case NULL:
+                return 0;
+            case DOUBLE:
+            case FLOAT:
+            case OTHER:
+                return Double.doubleToRawLongBits(number.doubleValue());
+            default:
+                return number.longValue();
+        }
+    }
+    
+    static final Number box(byte kind, long bits) {
+        switch (kind) {
+            case NULL:
+                return null;
+            case DOUBLE:
+            case OTHER:
+                return new Double(Double.longBitsToDouble(bits));
+            case FLOAT:
+                return new Float((float)Double.longBitsToDouble(bits));
+            case LONG:
+                return new Long(bits);
+            case INTEGER:
+                return new Integer((int)bits);
+            case SHORT:
+                return new Short((short)bits);
+            default:
+                return new Byte((byte)bits);
+        }
+    }
+    
+}
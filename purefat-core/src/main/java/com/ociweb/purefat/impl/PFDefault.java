@@ -34,15 +34,40 @@ package com.ociweb.purefat.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ociweb.purefat.AuditedDouble;
 import com.ociweb.purefat.FATTemplate;
 
 public class PFDefault implements PFImpl {
     
     private static final Logger logger = LoggerFactory.getLogger(PFDefault.class);
+    private static final boolean ASSERTIONS = assertionsOn();
     private final FunctionAuditTrail auditTrail;
+    private final HandleTrail handleTrail;
 
     public PFDefault(FunctionAuditTrail auditTrail) {
+        this(auditTrail, null);
+    }
+    
+    /**
+     * @param handleTrail records values audited by handle, without one they are not recorded
+     */
+    public PFDefault(FunctionAuditTrail auditTrail, HandleTrail handleTrail) {
         this.auditTrail = auditTrail;
+        this.handleTrail = handleTrail;
+    }
+    
+    private static final boolean assertionsOn() {
+        boolean on = false;
+        assert(on = true);
+        return on;
+    }
+    
+    /**
+     * Everything here is done by assert so nothing is audited without -ea
+     */
+    @Override
+    public final boolean isAuditing() {
+        return ASSERTIONS;
     }
 
     /* (non-Javadoc)
@@ -133,6 +158,19 @@ public class PFDefault implements PFImpl {
         assert(format.log(logger, auditTrail, keyNumber, Thread.currentThread().getStackTrace()));
     }
     
+    @Override
+    public final boolean logViolation(Number keyNumber, FATTemplate format) {
+        //only called from constraints that are already asserted
+        return ViolationReporter.violations.report(logger, auditTrail, keyNumber, format);
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        LabelStats stats = auditTrail.stats(label);
+        FunctionAuditTrailOffHeap handles = null==handleTrail ? null : handleTrail.existing();
+        return null==stats && null!=handles ? handles.stats(label) : stats;
+    }
+    
     /* (non-Javadoc)
      * @see com.ociweb.purefat.PFImpl#audit(double, java.lang.String)
      */
@@ -220,6 +258,32 @@ public class PFDefault implements PFImpl {
         assert(auditTrail.continueAuditFrom(channelId,boxed));
     }
 
+    @Override
+    public final long auditHandle(double value, String label) {
+        long handle = AuditedDouble.UNRECORDED;
+        //assigned only when assertions are on, like every other save
+        assert(null==handleTrail || (handle = handleTrail.trail().store(value, label))>=0);
+        return handle;
+    }
+
+    @Override
+    public final long auditHandle(double value, String label, String expressionText, int count,
+            AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4,
+            AuditedDouble p5, AuditedDouble p6, AuditedDouble p7) {
+        long handle = AuditedDouble.UNRECORDED;
+        assert(null==handleTrail || (handle = handleTrail.trail().store(value, label, expressionText, count, p1, p2, p3, p4, p5, p6, p7))>=0);
+        return handle;
+    }
 
+    @Override
+    public final void logAuditTrail(long handle, FATTemplate format) {
+        assert(logHandle(handle, format));
+    }
+    
+    private final boolean logHandle(long handle, FATTemplate format) {
+        FunctionAuditTrailOffHeap handles = null==handleTrail ? null : handleTrail.existing();
+        Number key = null==handles ? null : handles.keyOf(handle);
+        return null==key || format.log(logger, handles, key, Thread.currentThread().getStackTrace());
+    }
     
 }
@@ -31,6 +31,7 @@
  */
 package com.ociweb.purefat.impl;
 
+import com.ociweb.purefat.AuditedDouble;
 import com.ociweb.purefat.FATTemplate;
 
 public interface PFImpl {
@@ -38,6 +39,12 @@ public interface PFImpl {
     final String     LABEL_WRAP = "{}";
     final int        MAX_PARAMS = 7;
 
+    /**
+     * @return false if audits are neither saved nor checked so the caller
+     *         may skip them, this never changes for an instance
+     */
+    boolean isAuditing();
+    
     void auditIsTightRadian(Number number); // only +- pi 
     
     void auditIsPositiveRadian(Number number); // 0 to 2pi
@@ -59,6 +66,15 @@ public interface PFImpl {
     void auditIsPositive(Number number);
 
     void logAuditTrail(Number keyNumber, FATTemplate format);
+    
+    /**
+     * Logs the trail of a value that broke a constraint unless enough like 
+     * it have been logged already.
+     * @return true if the trail was logged
+     */
+    boolean logViolation(Number keyNumber, FATTemplate format);
+
+    LabelStats stats(String label);
 
     void audit(Number value, String label);
     
@@ -93,4 +109,19 @@ public interface PFImpl {
 
     void continueAuditFrom(String channelId, Number boxed);
 
+    /**
+     * @return handle of the record or AuditedDouble.UNRECORDED
+     */
+    long auditHandle(double value, String label);
+    
+    /**
+     * Unused params are null, count is the number passed.
+     * @return handle of the record or AuditedDouble.UNRECORDED
+     */
+    long auditHandle(double value, String label, String expressionText, int count,
+            AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4,
+            AuditedDouble p5, AuditedDouble p6, AuditedDouble p7);
+    
+    void logAuditTrail(long handle, FATTemplate format);
+    
 }
\ No newline at end of file
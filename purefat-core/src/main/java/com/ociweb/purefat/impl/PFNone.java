@@ -31,10 +31,16 @@
  */
 package com.ociweb.purefat.impl;
 
+import com.ociweb.purefat.AuditedDouble;
 import com.ociweb.purefat.FATTemplate;
 
 public class PFNone implements PFImpl {
 
+    @Override
+    public final boolean isAuditing() {
+        return false;
+    }
+
     /* (non-Javadoc)
      * @see com.ociweb.purefat.PFImpl#auditIsTightRadian(java.lang.Number)
      */
@@ -112,6 +118,16 @@ public class PFNone implements PFImpl {
     public final void logAuditTrail(Number keyNumber, FATTemplate format) {
     }
     
+    @Override
+    public final boolean logViolation(Number keyNumber, FATTemplate format) {
+        return false;
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        return null;
+    }
+    
     /* (non-Javadoc)
      * @see com.ociweb.purefat.PFImpl#audit(double, java.lang.String)
      */
@@ -189,5 +205,21 @@ public class PFNone implements PFImpl {
     @Override
     public void continueAuditFrom(String channelId, Number boxed) {
     }
+
+    @Override
+    public final long auditHandle(double value, String label) {
+        return AuditedDouble.UNRECORDED;
+    }
+
+    @Override
+    public final long auditHandle(double value, String label, String expressionText, int count,
+            AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4,
+            AuditedDouble p5, AuditedDouble p6, AuditedDouble p7) {
+        return AuditedDouble.UNRECORDED;
+    }
+
+    @Override
+    public final void logAuditTrail(long handle, FATTemplate format) {
+    }
     
 }
@@ -0,0 +1,454 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.ociweb.purefat.AuditedDouble;
+import com.ociweb.purefat.FATTemplate;
+
+/**
+ * Records only 1 in rate of the trails.  The choice is made once for each 
+ * root, a value audited with a label alone or arriving on a channel, from a
+ * hash of its label and value so the same roots are picked on every run.
+ * Values computed from a picked value are recorded, so each picked trail is
+ * complete and the others cost one lookup per param.
+ * 
+ * The first root of each label is kept as well so constants audited once at
+ * startup are in every picked trail.  Kept values are recorded without pulling
+ * in what is later computed from them.  A value computed only from constants
+ * is held in a small table until a picked value uses it, then it is recorded
+ * and kept like a constant.  One pushed out of the table before that is just 
+ * unrecorded, it can never be taken for a picked value.  Params are looked 
+ * up in the audit trail so an external only trail records just the roots, 
+ * and a segmented trail searches for every param.  Nothing is looked up 
+ * while the delegate is not auditing.
+ */
+public class PFSampling implements PFImpl {
+
+    //lineage of a param, or'ed together over all the params
+    private static final int UNRECORDED = 1;
+    private static final int KEPT       = 2;
+    private static final int PICKED     = 4;
+    private static final int PENDING    = 8;
+    
+    private static final int KEPT_SIZE = 1<<12;
+    private static final int KEPT_DERIVED_SIZE = 1<<13;
+    private static final int PENDING_SIZE = 1<<10;
+    private static final int PROBES = 16;
+    
+    private final PFImpl delegate;
+    private final FunctionAuditTrail auditTrail;
+    private final int rate;
+    
+    //weak identity set of the kept values, once full new roots are not kept
+    //or recorded so a kept value is never mistaken for a picked one
+    private final AtomicReferenceArray<WeakReference<Number>> kept = new AtomicReferenceArray<WeakReference<Number>>(KEPT_SIZE);
+    //the same for values computed from constants, apart so they never crowd out the roots
+    private final AtomicReferenceArray<WeakReference<Number>> keptDerived = new AtomicReferenceArray<WeakReference<Number>>(KEPT_DERIVED_SIZE);
+    
+    //values computed only from constants that are not recorded yet, one per slot
+    private final AtomicReferenceArray<Derivation> pending = new AtomicReferenceArray<Derivation>(PENDING_SIZE);
+    
+    /**
+     * Everything needed to record a value later, when a picked value uses it.
+     */
+    private static final class Derivation {
+        private final Number value;
+        private final String label;
+        private final String expressionText;
+        private final Number[] params;
+        
+        private Derivation(Number value, String label, String expressionText, Number[] params) {
+            this.value = value;
+            this.label = label;
+            this.expressionText = expressionText;
+            this.params = params;
+        }
+    }
+    
+    /**
+     * @param delegate records and checks the picked trails
+     * @param auditTrail same trail the delegate saves to
+     * @param rate record 1 in rate of the roots
+     */
+    public PFSampling(PFImpl delegate, FunctionAuditTrail auditTrail, int rate) {
+        this.delegate = delegate;
+        this.auditTrail = auditTrail;
+        this.rate = rate;
+    }
+    
+    /**
+     * Same answer for the same key and value in every JVM.
+     */
+    static final boolean isPicked(String key, double value, int rate) {
+        long h = key.hashCode()*0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(value);
+        //murmur3 finalizer so nearby values spread over the whole range
+        h ^= h>>>33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h>>>33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h>>>33;
+        return 0 == (h & Long.MAX_VALUE) % rate;
+    }
+    
+    private final boolean isRoot(String label, Number value) {
+        if (isPicked(label, value.doubleValue(), rate)) {
+            return true;
+        }
+        return null == auditTrail.stats(label) && keep(kept, value);
+    }
+    
+    private final int lineage(Number param) {
+        if (null == param) {
+            return 0;
+        }
+        if (!auditTrail.isRecorded(param)) {
+            return isPending(param) ? PENDING : UNRECORDED;
+        }
+        return isKept(param) ? KEPT : PICKED;
+    }
+    
+    /**
+     * Recorded if any param was picked.
+     */
+    private static final boolean isRecorded(int lineage) {
+        return 0 != (lineage & PICKED);
+    }
+    
+    /**
+     * Computed from constants alone, or from values that were.
+     */
+    private static final boolean isConstant(int lineage) {
+        return 0 != lineage && 0 == (lineage & (UNRECORDED|PICKED));
+    }
+    
+    private final boolean isKept(Number value) {
+        return contains(kept, value) || contains(keptDerived, value);
+    }
+    
+    private static final boolean contains(AtomicReferenceArray<WeakReference<Number>> table, Number value) {
+        int bucket = System.identityHashCode(value);
+        int i = 0;
+        while (i<PROBES) {
+            WeakReference<Number> ref = table.get((bucket+i) & (table.length()-1));
+            if (null == ref) {
+                return false;
+            }
+            if (value == ref.get()) {
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+    
+    /**
+     * @return false if there was no free slot near the value
+     */
+    private static final boolean keep(AtomicReferenceArray<WeakReference<Number>> table, Number value) {
+        WeakReference<Number> newRef = new WeakReference<Number>(value);
+        int bucket = System.identityHashCode(value);
+        int i = 0;
+        while (i<PROBES) {
+            int pos = (bucket+i) & (table.length()-1);
+            WeakReference<Number> ref = table.get(pos);
+            if ((null == ref || null == ref.get()) && table.compareAndSet(pos, ref, newRef)) {
+                return true;
+            }
+            i++;
+        }
+        return false;
+    }
+    
+    private final boolean isPending(Number value) {
+        Derivation derivation = pending.get(System.identityHashCode(value) & (PENDING_SIZE-1));
+        return null != derivation && value == derivation.value;
+    }
+    
+    /**
+     * Holds a value computed only from constants, it replaces whatever was
+     * in its slot which then stays unrecorded.
+     */
+    private final void pend(Number value, String label, String expressionText, Number[] params) {
+        pending.set(System.identityHashCode(value) & (PENDING_SIZE-1), new Derivation(value, label, expressionText, params));
+    }
+    
+    /**
+     * Records a pending param, after the pending values it was computed 
+     * from, so the picked trail using it is complete.  It is kept so later 
+     * uses do not take it for a picked value, if it can not be kept it is 
+     * left unrecorded.
+     */
+    private final void record(Number param) {
+        if (null == param) {
+            return;
+        }
+        int pos = System.identityHashCode(param) & (PENDING_SIZE-1);
+        Derivation derivation = pending.get(pos);
+        if (null != derivation && param == derivation.value && pending.compareAndSet(pos, derivation, null)) {
+            Number[] params = derivation.params;
+            int i = params.length;
+            while (--i>=0) {
+                record(params[i]);
+            }
+            if (keep(keptDerived, param)) {
+                delegate.audit(param, derivation.label, derivation.expressionText, params);
+            }
+        }
+    }
+    
+    /**
+     * Decides for a value computed from params, pending params are recorded
+     * when it is and it is held as pending when they are all constant.
+     * @return true if the value is to be recorded
+     */
+    private final boolean isRecorded(int lineage, Number value, String label, String expressionText, int count,
+                                     Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        if (isRecorded(lineage)) {
+            if (0 != (lineage & PENDING)) {
+                record(p1);
+                record(p2);
+                record(p3);
+                record(p4);
+                record(p5);
+                record(p6);
+                record(p7);
+            }
+            return true;
+        }
+        if (isConstant(lineage)) {
+            pend(value, label, expressionText, Arrays.copyOf(new Number[] {p1, p2, p3, p4, p5, p6, p7}, count));
+        }
+        return false;
+    }
+    
+    private static final boolean isRecorded(AuditedDouble param) {
+        return null != param && param.handle() >= 0;
+    }
+
+    @Override
+    public final boolean isAuditing() {
+        return delegate.isAuditing();
+    }
+
+    //constraints are checked on every value, picked or not
+    
+    @Override
+    public final void auditIsTightRadian(Number number) {
+        delegate.auditIsTightRadian(number);
+    }
+
+    @Override
+    public final void auditIsPositiveRadian(Number number) {
+        delegate.auditIsPositiveRadian(number);
+    }
+
+    @Override
+    public final void auditIsFinite(Number number) {
+        delegate.auditIsFinite(number);
+    }
+
+    @Override
+    public final void auditIsGT(Number number, Number lt) {
+        delegate.auditIsGT(number, lt);
+    }
+
+    @Override
+    public final void auditIsGTE(Number number, Number lt) {
+        delegate.auditIsGTE(number, lt);
+    }
+
+    @Override
+    public final void auditIsLT(Number number, Number lt) {
+        delegate.auditIsLT(number, lt);
+    }
+
+    @Override
+    public final void auditIsLTE(Number number, Number lte) {
+        delegate.auditIsLTE(number, lte);
+    }
+
+    @Override
+    public final void auditIsNear(Number number, Number near, double epsilon) {
+        delegate.auditIsNear(number, near, epsilon);
+    }
+
+    @Override
+    public final void auditIsNotZero(Number number) {
+        delegate.auditIsNotZero(number);
+    }
+
+    @Override
+    public final void auditIsPositive(Number number) {
+        delegate.auditIsPositive(number);
+    }
+
+    @Override
+    public final void logAuditTrail(Number keyNumber, FATTemplate format) {
+        delegate.logAuditTrail(keyNumber, format);
+    }
+    
+    @Override
+    public final boolean logViolation(Number keyNumber, FATTemplate format) {
+        return delegate.logViolation(keyNumber, format);
+    }
+
+    @Override
+    public final LabelStats stats(String label) {
+        return delegate.stats(label);
+    }
+
+    @Override
+    public final void audit(Number value, String label) {
+        if (delegate.isAuditing() && isRoot(label, value)) {
+            delegate.audit(value, label);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText) {
+        if (delegate.isAuditing() && isRoot(label, value)) {
+            delegate.audit(value, label, expressionText);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1), value, label, expressionText, 1, p1, null, null, null, null, null, null)) {
+            delegate.audit(value, label, expressionText, p1);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2), value, label, expressionText, 2, p1, p2, null, null, null, null, null)) {
+            delegate.audit(value, label, expressionText, p1, p2);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2, Number p3) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2)|lineage(p3), value, label, expressionText, 3, p1, p2, p3, null, null, null, null)) {
+            delegate.audit(value, label, expressionText, p1, p2, p3);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2)|lineage(p3)|lineage(p4), value, label, expressionText, 4, p1, p2, p3, p4, null, null, null)) {
+            delegate.audit(value, label, expressionText, p1, p2, p3, p4);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2)|lineage(p3)|lineage(p4)|lineage(p5), value, label, expressionText, 5, p1, p2, p3, p4, p5, null, null)) {
+            delegate.audit(value, label, expressionText, p1, p2, p3, p4, p5);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2)|lineage(p3)|lineage(p4)|lineage(p5)|lineage(p6), value, label, expressionText, 6, p1, p2, p3, p4, p5, p6, null)) {
+            delegate.audit(value, label, expressionText, p1, p2, p3, p4, p5, p6);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number p1, Number p2, Number p3, Number p4, Number p5, Number p6, Number p7) {
+        if (delegate.isAuditing() && isRecorded(lineage(p1)|lineage(p2)|lineage(p3)|lineage(p4)|lineage(p5)|lineage(p6)|lineage(p7), value, label, expressionText, 7, p1, p2, p3, p4, p5, p6, p7)) {
+            delegate.audit(value, label, expressionText, p1, p2, p3, p4, p5, p6, p7);
+        }
+    }
+
+    @Override
+    public final void audit(Number value, String label, String expressionText, Number[] params) {
+        if (!delegate.isAuditing()) {
+            return;
+        }
+        int lineage = 0;
+        int i = params.length;
+        while (--i>=0) {
+            lineage |= lineage(params[i]);
+        }
+        if (isRecorded(lineage)) {
+            if (0 != (lineage & PENDING)) {
+                i = params.length;
+                while (--i>=0) {
+                    record(params[i]);
+                }
+            }
+            delegate.audit(value, label, expressionText, params);
+        } else if (isConstant(lineage)) {
+            pend(value, label, expressionText, params.clone());
+        }
+    }
+
+    @Override
+    public final void continueAuditTo(String channelId, Number boxed) {
+        if (delegate.isAuditing() && 0 != (lineage(boxed) & (KEPT|PICKED))) {
+            delegate.continueAuditTo(channelId, boxed);
+        }
+    }
+
+    @Override
+    public final void continueAuditFrom(String channelId, Number boxed) {
+        if (delegate.isAuditing() && isPicked(channelId, boxed.doubleValue(), rate)) {
+            delegate.continueAuditFrom(channelId, boxed);
+        }
+    }
+
+    @Override
+    public final long auditHandle(double value, String label) {
+        //handles carry no identity to keep so only picked roots are recorded
+        return delegate.isAuditing() && isPicked(label, value, rate) ? delegate.auditHandle(value, label) : AuditedDouble.UNRECORDED;
+    }
+
+    @Override
+    public final long auditHandle(double value, String label, String expressionText, int count,
+            AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4,
+            AuditedDouble p5, AuditedDouble p6, AuditedDouble p7) {
+        return isRecorded(p1) || isRecorded(p2) || isRecorded(p3) || isRecorded(p4) || 
+               isRecorded(p5) || isRecorded(p6) || isRecorded(p7) ? 
+                      delegate.auditHandle(value, label, expressionText, count, p1, p2, p3, p4, p5, p6, p7) 
+                    : AuditedDouble.UNRECORDED;
+    }
+
+    @Override
+    public final void logAuditTrail(long handle, FATTemplate format) {
+        delegate.logAuditTrail(handle, format);
+    }
+
+}
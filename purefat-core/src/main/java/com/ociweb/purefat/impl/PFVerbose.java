@@ -34,15 +34,30 @@ package com.ociweb.purefat.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ociweb.purefat.AuditedDouble;
 import com.ociweb.purefat.FATTemplate;
 
 public class PFVerbose implements PFImpl {
     
     private static final Logger logger = LoggerFactory.getLogger(PFVerbose.class);
     private final FunctionAuditTrail auditTrail;
+    private final HandleTrail handleTrail;
 
     public PFVerbose(FunctionAuditTrail auditTrail) {
+        this(auditTrail, null);
+    }
+    
+    /**
+     * @param handleTrail records values audited by handle, without one they are not recorded
+     */
+    public PFVerbose(FunctionAuditTrail auditTrail, HandleTrail handleTrail) {
         this.auditTrail = auditTrail;
+        this.handleTrail = handleTrail;
+    }
+    
+    @Override
+    public final boolean isAuditing() {
+        return true;
     }
     
     /* (non-Javadoc)
@@ -154,6 +169,18 @@ public class PFVerbose implements PFImpl {
         format.log(logger, auditTrail, keyNumber, Thread.currentThread().getStackTrace());
     }
     
+    @Override
+    public final boolean logViolation(Number keyNumber, FATTemplate format) {
+        return ViolationReporter.violations.report(logger, auditTrail, keyNumber, format);
+    }
+    
+    @Override
+    public final LabelStats stats(String label) {
+        LabelStats stats = auditTrail.stats(label);
+        FunctionAuditTrailOffHeap handles = null==handleTrail ? null : handleTrail.existing();
+        return null==stats && null!=handles ? handles.stats(label) : stats;
+    }
+    
     /* (non-Javadoc)
      * @see com.ociweb.purefat.PFImpl#audit(double, java.lang.String)
      */
@@ -240,5 +267,27 @@ public class PFVerbose implements PFImpl {
     public void continueAuditFrom(String channelId, Number boxed) {
         auditTrail.continueAuditFrom(channelId, boxed);
     }
+
+    @Override
+    public final long auditHandle(double value, String label) {
+        return null==handleTrail ? AuditedDouble.UNRECORDED : handleTrail.trail().store(value, label);
+    }
+
+    @Override
+    public final long auditHandle(double value, String label, String expressionText, int count,
+            AuditedDouble p1, AuditedDouble p2, AuditedDouble p3, AuditedDouble p4,
+            AuditedDouble p5, AuditedDouble p6, AuditedDouble p7) {
+        return null==handleTrail ? AuditedDouble.UNRECORDED 
+                                 : handleTrail.trail().store(value, label, expressionText, count, p1, p2, p3, p4, p5, p6, p7);
+    }
+
+    @Override
+    public final void logAuditTrail(long handle, FATTemplate format) {
+        FunctionAuditTrailOffHeap handles = null==handleTrail ? null : handleTrail.existing();
+        Number key = null==handles ? null : handles.keyOf(handle);
+        if (null!=key) {
+            format.log(logger, handles, key, Thread.currentThread().getStackTrace());
+        }
+    }
     
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the size the ring buffer grew to so the next run can start at
+ * that size instead of growing to it again.  The size is only used when 
+ * the max heap is the same as the run that learned it.
+ */
+final class RingBufferProfile {
+
+    private static final String SIZE = "size";
+    private static final String PEAK_USED = "peakUsed";
+    private static final String MAX_MEMORY = "maxMemory";
+    
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferProfile.class);
+    
+    private final File file;
+    private int learnedSize;
+    private int learnedUsed;
+    
+    RingBufferProfile(String path) {
+        this.file = new File(path);
+        load();
+    }
+    
+    /**
+     * @return size learned by an earlier run with the same max heap, zero if none
+     */
+    final int learnedSize() {
+        return learnedSize;
+    }
+    
+    /**
+     * @return most slots the same run ever had handed out, zero if none
+     */
+    final int learnedUsed() {
+        return learnedUsed;
+    }
+    
+    private final void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+            long maxMemory = Long.parseLong(properties.getProperty(MAX_MEMORY, "-1"));
+            if (maxMemory != Runtime.getRuntime().maxMemory()) {
+                logger.info("Ignoring ring buffer profile {}, it was learned with a different max heap.", file);
+                return;
+            }
+            int size = Integer.parseInt(properties.getProperty(SIZE, "0"));
+            int used = Integer.parseInt(properties.getProperty(PEAK_USED, "0"));
+            logger.info("Ring buffer profile {} has size {} with peak of {} used slots.", 
+                        new Object[] {file, size, used});
+            learnedSize = size;
+            learnedUsed = used;
+        } catch (IOException e) {
+            logger.warn("Unable to read ring buffer profile "+file, e);
+        } catch (NumberFormatException e) {
+            logger.warn("Unable to read ring buffer profile "+file, e);
+        } finally {
+            close(in);
+        }
+    }
+    
+    /**
+     * Written to a temporary file first so a run that is killed while 
+     * writing can not leave a broken profile behind.
+     */
+    final void save(int size, int peakUsed) {
+        Properties properties = new Properties();
+        properties.setProperty(SIZE, Integer.toString(size));
+        properties.setProperty(PEAK_USED, Integer.toString(peakUsed));
+        properties.setProperty(MAX_MEMORY, Long.toString(Runtime.getRuntime().maxMemory()));
+        
+        File temp = new File(file.getPath()+".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            properties.store(out, "PureFAT ring buffer profile");
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                //some platforms will not rename over an existing file
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    logger.warn("Unable to replace ring buffer profile {}", file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write ring buffer profile "+file, e);
+        } finally {
+            close(out);
+        }
+    }
+    
+    private static final void close(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                //nothing more can be done
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters kept by the internal trail.  Only the save counts are touched on
+ * every save, the rest are only touched on the slow paths they measure.
+ */
+final class RingBufferStats implements RingBufferStatsMBean {
+
+    static final String OBJECT_NAME = "com.ociweb.purefat:type=RingBuffer";
+    
+    static final int FRESH = 0;
+    static final int REUSED = 1;
+    static final int EVICTING = 2;
+    
+    private static final Logger logger = LoggerFactory.getLogger(RingBufferStats.class);
+    
+    private final FunctionAuditTrailInternal trail;
+    
+    private final StripedCounter[] saves = new StripedCounter[] {new StripedCounter(),new StripedCounter(),new StripedCounter()};
+    
+    //attempts past the first, almost always zero
+    private final AtomicLong extraProbes = new AtomicLong();
+    private final AtomicLong maxProbes = new AtomicLong();
+    
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    
+    private final AtomicLong growthEvents = new AtomicLong();
+    
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong maxScanned = new AtomicLong();
+    
+    private final Rate savesRate = new Rate();
+    private final Rate evictingRate = new Rate();
+    private final Rate scansRate = new Rate();
+    
+    /**
+     * Change in a running total since the last read, the first read covers
+     * the time since the stats were created.
+     */
+    private static final class Rate {
+        private long lastCount;
+        private long lastNanos = System.nanoTime();
+        
+        synchronized double perSecond(long count) {
+            long now = System.nanoTime();
+            double seconds = (now-lastNanos)/1e9;
+            double rate = seconds>0 ? (count-lastCount)/seconds : 0;
+            lastCount = count;
+            lastNanos = now;
+            return rate;
+        }
+    }
+    
+    RingBufferStats(FunctionAuditTrailInternal trail) {
+        this.trail = trail;
+    }
+    
+    /**
+     * Registers with the platform MBean server, a second trail in the same 
+     * JVM is left unregistered.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            logger.warn("unable to register "+OBJECT_NAME, e);
+        }
+    }
+    
+    void saved(int mode, int probes, long waitStart) {
+        saves[mode].increment();
+        if (probes>1) {
+            extraProbes.addAndGet(probes-1);
+            max(maxProbes, probes);
+        }
+        if (0!=waitStart) {
+            long waited = System.nanoTime()-waitStart;
+            waitNanos.addAndGet(waited);
+            max(maxWaitNanos, waited);
+        }
+    }
+    
+    void grew() {
+        growthEvents.incrementAndGet();
+    }
+    
+    void lookedUp(int scanLength) {
+        lookups.incrementAndGet();
+        if (scanLength>0) {
+            scans.incrementAndGet();
+            scanned.addAndGet(scanLength);
+            max(maxScanned, scanLength);
+        }
+    }
+    
+    private static final void max(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+        }
+    }
+    
+    @Override
+    public int getCapacity() {
+        return trail.capacity();
+    }
+
+    @Override
+    public int getMaxCapacity() {
+        return trail.maxCapacity();
+    }
+
+    @Override
+    public int getUsedSlots() {
+        return trail.usedSlots();
+    }
+
+    @Override
+    public int getLiveSlots() {
+        return trail.liveSlots();
+    }
+
+    @Override
+    public boolean isFull() {
+        return trail.isFull();
+    }
+
+    @Override
+    public long getGrowthEvents() {
+        return growthEvents.get();
+    }
+
+    @Override
+    public int getIndexCount() {
+        return trail.indexCount();
+    }
+
+    @Override
+    public long getSaves() {
+        return getFreshSaves()+getReusedSaves()+getEvictingSaves();
+    }
+
+    @Override
+    public long getFreshSaves() {
+        return saves[FRESH].sum();
+    }
+
+    @Override
+    public long getReusedSaves() {
+        return saves[REUSED].sum();
+    }
+
+    @Override
+    public long getEvictingSaves() {
+        return saves[EVICTING].sum();
+    }
+
+    @Override
+    public double getSavesPerSecond() {
+        return savesRate.perSecond(getSaves());
+    }
+
+    @Override
+    public double getEvictingSavesPerSecond() {
+        return evictingRate.perSecond(getEvictingSaves());
+    }
+
+    @Override
+    public double getAverageProbeLength() {
+        long count = getSaves();
+        return 0==count ? 0 : 1d+(extraProbes.get()/(double)count);
+    }
+
+    @Override
+    public long getMaxProbeLength() {
+        return Math.max(maxProbes.get(), getSaves()>0 ? 1 : 0);
+    }
+
+    @Override
+    public long getWaitMillis() {
+        return waitNanos.get()/1000000;
+    }
+
+    @Override
+    public long getMaxWaitMillis() {
+        return maxWaitNanos.get()/1000000;
+    }
+
+    @Override
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    @Override
+    public double getAverageScanLength() {
+        long count = scans.get();
+        return 0==count ? 0 : scanned.get()/(double)count;
+    }
+
+    @Override
+    public long getMaxScanLength() {
+        return maxScanned.get();
+    }
+
+    @Override
+    public long getScans() {
+        return scans.get();
+    }
+
+    @Override
+    public double getScansPerSecond() {
+        return scansRate.perSecond(getScans());
+    }
+
+}
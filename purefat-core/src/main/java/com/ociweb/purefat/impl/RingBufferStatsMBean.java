@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+/**
+ * Health of the internal ring buffer as seen over JMX.  Every count is a
+ * running total, the per second attributes are the change in a count since
+ * that attribute was last read.
+ */
+public interface RingBufferStatsMBean {
+
+    /**
+     * @return slots that may be handed out before the ring must grow
+     */
+    int getCapacity();
+    
+    /**
+     * @return ceiling set by purefat.ringbuffer.maxBytes or Integer.MAX_VALUE
+     */
+    int getMaxCapacity();
+    
+    /**
+     * @return slots that have ever been handed out
+     */
+    int getUsedSlots();
+    
+    /**
+     * @return slots whose value has not been collected, this walks the ring
+     */
+    int getLiveSlots();
+    
+    /**
+     * @return true once the oldest slots are being evicted
+     */
+    boolean isFull();
+    
+    long getGrowthEvents();
+    
+    int getIndexCount();
+    
+    long getSaves();
+    
+    /**
+     * @return saves that took a slot never used before
+     */
+    long getFreshSaves();
+    
+    /**
+     * @return saves that took the slot of a collected value
+     */
+    long getReusedSaves();
+    
+    /**
+     * @return saves that evicted the oldest record
+     */
+    long getEvictingSaves();
+    
+    /**
+     * @return saves per second since this was last read
+     */
+    double getSavesPerSecond();
+    
+    /**
+     * @return evicting saves per second since this was last read
+     */
+    double getEvictingSavesPerSecond();
+    
+    /**
+     * @return attempts per save to claim a slot, 1 when there is no contention
+     */
+    double getAverageProbeLength();
+    
+    long getMaxProbeLength();
+    
+    /**
+     * @return total time producers waited for the GC or for growth
+     */
+    long getWaitMillis();
+    
+    long getMaxWaitMillis();
+    
+    long getLookups();
+    
+    /**
+     * @return slots walked per lookup not answered by the index
+     */
+    double getAverageScanLength();
+    
+    long getMaxScanLength();
+    
+    /**
+     * @return lookups that had to walk the ring
+     */
+    long getScans();
+    
+    /**
+     * @return scans per second since this was last read
+     */
+    double getScansPerSecond();
+    
+}
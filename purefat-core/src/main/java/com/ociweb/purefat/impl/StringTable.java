@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns each distinct string a dense int id on first sight so records can
+ * store an int in place of a reference.  Ids are never reused.
+ * 
+ * Labels and templates are almost always literals, so the last instance 
+ * seen is also kept in a slot picked by its identity hash.  Looking up the
+ * same instance again is one array read with no hashing of the string, 
+ * other instances fall back to the map.
+ */
+final class StringTable {
+
+    /**
+     * Templates are shared by every trail so their ids can be resolved once 
+     * for each call site.
+     */
+    static final StringTable TEMPLATES = new StringTable();
+    
+    private static final int RECENT_SIZE = 1<<10;
+    private static final int RECENT_MASK = RECENT_SIZE-1;
+    
+    private final ConcurrentMap<String,Entry> ids = new ConcurrentHashMap<String,Entry>();
+    private final Entry[] recent = new Entry[RECENT_SIZE];
+    private volatile String[] values = new String[64];
+    private int count; //guarded by this
+    
+    /**
+     * Immutable so it can be read from recent without a lock.
+     */
+    private static final class Entry {
+        private final String value;
+        private final int id;
+        
+        private Entry(String value, int id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+    
+    final int id(String value) {
+        int slot = System.identityHashCode(value)&RECENT_MASK;
+        Entry entry = recent[slot];
+        if (null!=entry && entry.value==value) {
+            return entry.id;
+        }
+        entry = ids.get(value);
+        if (null==entry) {
+            entry = add(value);
+        }
+        if (entry.value==value) {
+            //only the first instance is cached so nothing is allocated here
+            recent[slot] = entry;
+        }
+        return entry.id;
+    }
+    
+    /**
+     * @return -1 if the value has never been given an id
+     */
+    final int find(String value) {
+        Entry entry = ids.get(value);
+        return null==entry ? -1 : entry.id;
+    }
+    
+    private final synchronized Entry add(String value) {
+        Entry entry = ids.get(value);
+        if (null==entry) {
+            String[] v = values;
+            if (count==v.length) {
+                String[] temp = new String[count<<1];
+                System.arraycopy(v, 0, temp, 0, count);
+                v = temp;
+            }
+            v[count] = value;
+            //publish the value before the id can be seen
+            values = v;
+            entry = new Entry(value, count++);
+            ids.put(value, entry);
+        }
+        return entry;
+    }
+    
+    final synchronized int size() {
+        return count;
+    }
+    
+    final String value(int id) {
+        return values[id];
+    }
+    
+}
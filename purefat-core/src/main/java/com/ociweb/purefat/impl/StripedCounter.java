@@ -31,41 +31,38 @@
  */
 package com.ociweb.purefat.impl;
 
-public class FunMetaData {
+import java.util.concurrent.atomic.AtomicLongArray;
 
-    static FunMetaData NONE = new FunMetaData(new StackTraceElement[]{},"","");
-    
-    private final String label;
-    private final String expression;
-    private final StackTraceElement callInfo;
+/**
+ * Counter for the save path, each thread adds to its own padded cell so 
+ * producers on different cores do not fight over one cache line.  Reading
+ * the total walks every cell and is only done when it is asked for.
+ */
+final class StripedCounter {
+
+    private final static int STRIPES = 16;//power of 2
+    private final static int PAD = 8;//longs in a 64 byte cache line
     
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES*PAD);
     
-    FunMetaData(StackTraceElement[] stackTrace, String label, String expressionText) {
-        this.label = label;
-        this.expression = expressionText;
-        
-        int i = 0;
-        while (++i<stackTrace.length) {
-            if (!stackTrace[i].getClassName().contains("purefat.impl") &&
-                !stackTrace[i].getClassName().contains("purefat.PureFAT")) {
-                this.callInfo = stackTrace[i];
-                return;
-            }
-        }
-        
-        this.callInfo = new StackTraceElement("Unknown","Unknown","Unknown",0);
+    private static final int cell() {
+        return ((int)Thread.currentThread().getId() & (STRIPES-1))*PAD;
     }
     
-    public String stackElement() {
-        return callInfo.toString();
+    void increment() {
+        cells.incrementAndGet(cell());
     }
     
-    public String label() {
-        return label;
+    void add(long delta) {
+        cells.addAndGet(cell(), delta);
     }
     
-    public String expression() {
-        return expression;
+    long sum() {
+        long sum = 0;
+        int i = STRIPES;
+        while (--i>=0) {
+            sum += cells.get(i*PAD);
+        }
+        return sum;
     }
-
 }
@@ -31,11 +31,15 @@
  */
 package com.ociweb.purefat.impl;
 
-import java.rmi.dgc.VMID;
-
 public class Util {
     
-    private final static VMID instanceId = new VMID();
+    //Unique enough to tell apart the logs of one run from the next, built 
+    //once without the host lookup and secure random a VMID needs.
+    private final static String instanceId = "["+
+                Long.toHexString(System.currentTimeMillis())+'-'+
+                Integer.toHexString(System.identityHashCode(new Object()))+'-'+
+                Long.toHexString(System.nanoTime())+
+                ']';
     
     private Util(){
     }
@@ -47,6 +51,6 @@ public class Util {
     }
     
     public static final String instanceId() {
-        return "["+instanceId+"]";
+        return instanceId;
     }
 }
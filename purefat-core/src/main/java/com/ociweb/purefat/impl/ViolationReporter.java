@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.ociweb.purefat.FATTemplate;
+
+/**
+ * Keeps a failing constraint from flooding the log.  Violations are grouped
+ * by the label of the value, the call site of the constraint and the shape
+ * of the trail, the labels and templates in it without their values.  The
+ * first few of each group are logged in full, the rest are only counted and
+ * a summary of them is logged once per period.
+ * 
+ * Where the JVM has a StackWalker the call site is found by walking only 
+ * the frames up to it, the shape walks at most a few hundred records and no
+ * key string is built.  The whole stack is only captured for the violations
+ * that are logged.
+ * 
+ * The summary is written by the next violation after the period has passed,
+ * and once more when the JVM exits, so no thread is needed.
+ */
+public class ViolationReporter {
+
+    //System property for the violations of each group logged in full
+    private static final String LIMIT_KEY = "purefat.violation.limit";
+    private static final int LIMIT_DEFAULT = 10;
+    
+    //System property for the millis between summaries of the others
+    private static final String PERIOD_KEY = "purefat.violation.period";
+    private static final long PERIOD_DEFAULT = 60000;
+    
+    //records followed to find the shape of a trail
+    private static final int SHAPE_RECORDS = 256;
+    
+    //once this many groups are known new ones are grouped without their shape
+    private static final int MAX_GROUPS = 1024;
+    
+    /**
+     * Shared by every mode so the counts survive a mode switch.
+     */
+    static final ViolationReporter violations = 
+            new ViolationReporter(Integer.parseInt(System.getProperty(LIMIT_KEY, Integer.toString(LIMIT_DEFAULT))),
+                                  Long.parseLong(System.getProperty(PERIOD_KEY, Long.toString(PERIOD_DEFAULT))));
+    
+    private final int limit;
+    private final long period;
+    private final ConcurrentMap<Key,Group> groups = new ConcurrentHashMap<Key,Group>();
+    private final AtomicLong nextSummary;
+    private final AtomicBoolean hooked = new AtomicBoolean();
+    
+    private static final class Group {
+        private final String label;
+        private final StackTraceElement site;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong suppressed = new AtomicLong();
+        
+        private Group(String label, StackTraceElement site) {
+            this.label = label;
+            this.site = site;
+        }
+    }
+    
+    private static final class Key {
+        private final String label;
+        private final StackTraceElement site;
+        private final int shape;
+        
+        private Key(String label, StackTraceElement site, int shape) {
+            this.label = label;
+            this.site = site;
+            this.shape = shape;
+        }
+        
+        @Override
+        public int hashCode() {
+            return (label.hashCode()*31 + site.hashCode())*31 + shape;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key)obj;
+            return shape == that.shape && label.equals(that.label) && site.equals(that.site);
+        }
+    }
+    
+    /**
+     * @param limit violations of each group logged in full
+     * @param period millis between summaries of the violations not logged
+     */
+    public ViolationReporter(int limit, long period) {
+        this.limit = limit;
+        this.period = period;
+        this.nextSummary = new AtomicLong(System.currentTimeMillis()+period);
+    }
+    
+    /**
+     * Logs the trail of the value if it is one of the first of its group.
+     * @return true if it was logged, false if it was only counted
+     */
+    public boolean report(Logger logger, FunctionAuditTrail trail, Number key, FATTemplate format) {
+        //a miss can cost a scan of the whole trail, so look only for recorded values
+        Function fun = null!=key && trail.isRecorded(key) ? trail.get(key) : null;
+        Group group = group(trail, key, fun, FunMetaData.callSite());
+        
+        boolean isLogged = group.count.incrementAndGet()<=limit;
+        if (isLogged) {
+            format.log(logger, trail, key, Thread.currentThread().getStackTrace());
+        } else {
+            group.suppressed.incrementAndGet();
+            if (hooked.compareAndSet(false, true)) {
+                final Logger summaryLogger = logger;
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        summarize(summaryLogger);
+                    }}));
+            }
+        }
+        
+        long next = nextSummary.get();
+        long now = System.currentTimeMillis();
+        if (now>=next && nextSummary.compareAndSet(next, now+period)) {
+            summarize(logger);
+        }
+        return isLogged;
+    }
+    
+    /**
+     * Finds the group by label, call site and shape.
+     */
+    private Group group(FunctionAuditTrail trail, Number key, Function fun, StackTraceElement site) {
+        String label = null==fun ? "unaudited" : fun.labelName();
+        Key shaped = new Key(label, site, shape(trail, key, fun));
+        Group group = groups.get(shaped);
+        if (null == group) {
+            Key id = groups.size()<MAX_GROUPS ? shaped : new Key(label, site, 0);
+            Group temp = new Group(label, site);
+            group = groups.putIfAbsent(id, temp);
+            if (null == group) {
+                group = temp;
+            }
+        }
+        return group;
+    }
+    
+    /**
+     * Logs how many violations of each group were counted but not logged 
+     * since the last summary.
+     */
+    public void summarize(Logger logger) {
+        for (Map.Entry<Key,Group> entry : groups.entrySet()) {
+            Group group = entry.getValue();
+            long suppressed = group.suppressed.getAndSet(0);
+            if (suppressed>0) {
+                logger.warn("{} more violations of {} at {} were not logged, {} in total", 
+                            new Object[] {suppressed, group.label, group.site, group.count.get()});
+            }
+        }
+    }
+    
+    /**
+     * Hash of the labels and templates found in the trail, repeated steps 
+     * like a loop only count once so trails of any depth have one shape.
+     */
+    private static int shape(FunctionAuditTrail trail, Number key, Function fun) {
+        Set<String> steps = new HashSet<String>();
+        Deque<Function> todo = new ArrayDeque<Function>();
+        if (null != fun) {
+            todo.push(fun);
+        }
+        int records = 0;
+        while (!todo.isEmpty() && ++records<=SHAPE_RECORDS) {
+            Function parent = todo.pop();
+            if (steps.add(parent.labelName()+'='+parent.text()) && !parent.isLabel()) {
+                for (Number param : parent.params()) {
+                    Function child = null==param || !trail.isRecorded(param) ? null : trail.get(param, parent);
+                    if (null != child && child != parent) {
+                        todo.push(child);
+                    }
+                }
+            }
+        }
+        return steps.hashCode();
+    }
+    
+}
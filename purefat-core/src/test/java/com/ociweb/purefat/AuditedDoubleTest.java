@@ -0,0 +1,104 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.impl.Function;
+import com.ociweb.purefat.impl.FunctionAuditTrailInternal;
+import com.ociweb.purefat.impl.FunctionAuditTrailOffHeap;
+import com.ociweb.purefat.impl.HandleTrail;
+import com.ociweb.purefat.impl.PFVerbose;
+
+public class AuditedDoubleTest {
+
+    private static final int STEPS = 100000;
+    
+    @Test
+    public void testTrailFollowsHandles() {
+        FunctionAuditTrailOffHeap trail = FunctionAuditTrailOffHeap.forHandles();
+        
+        AuditedDouble sample = new AuditedDouble();
+        sample.value = 3;
+        sample.handle = trail.store(3, "handleSample");
+        AuditedDouble result = new AuditedDouble();
+        result.value = 6;
+        result.handle = trail.store(6, "handleDoubled", "({}*2)", 1, sample, null, null, null, null, null, null);
+        
+        Number key = trail.keyOf(result.handle);
+        Function fun = trail.get(key);
+        assertNotNull(fun);
+        assertEquals("handleDoubled", fun.labelName());
+        assertEquals("(3.0*2)", fun.toString());
+        
+        Function param = trail.get(fun.params()[0], fun);
+        assertNotNull(param);
+        assertEquals("handleSample", param.labelName());
+        assertEquals(2, trail.stats("handleSample").count()+trail.stats("handleDoubled").count());
+    }
+    
+    @Test
+    public void testHandleTrailMadeOnFirstUse() {
+        HandleTrail handles = new HandleTrail();
+        PFVerbose impl = new PFVerbose(new FunctionAuditTrailInternal(), handles);
+        assertNull(impl.stats("handleLazy"));
+        impl.logAuditTrail(0, FATTemplate.table);
+        //nothing audited by handle so no direct memory was taken
+        assertNull(handles.existing());
+        
+        long handle = impl.auditHandle(1, "handleLazy");
+        assertNotNull(handles.existing());
+        assertSame(handles.existing(), handles.trail());
+        assertTrue(handles.trail().isRecorded(handles.trail().keyOf(handle)));
+        assertEquals(1, impl.stats("handleLazy").count());
+    }
+    
+    @Test
+    public void testHandlesShareAnOffHeapTrail() {
+        FunctionAuditTrailOffHeap trail = FunctionAuditTrailOffHeap.forHandles();
+        PFVerbose impl = new PFVerbose(trail, new HandleTrail(trail));
+        long handle = impl.auditHandle(2, "handleShared");
+        assertTrue(trail.isRecorded(trail.keyOf(handle)));
+        assertEquals(1, trail.stats("handleShared").count());
+    }
+    
+    @Test
+    public void testStepsDoNotAllocate() {
+        AuditedDouble sum = new AuditedDouble();
+        AuditedDouble x = new AuditedDouble();
+        PureFAT.audit(x, 0.5d, "handleX");
+        PureFAT.audit(sum, 0d, "handleSum");
+        run(sum, x);//first pass registers the label
+        
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threads;
+            long id = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(id);
+            run(sum, x);
+            long allocated = bean.getThreadAllocatedBytes(id) - before;
+            //only the occasional new segment, a box per step would be 16 bytes each
+            assertTrue("allocated "+allocated+" bytes", allocated < STEPS);
+        }
+        assertEquals(STEPS, sum.value(), 0d);
+        assertEquals(2*STEPS, PureFAT.stats("handleStep").count());
+        
+        AuditedDouble doubled = PureFAT.audit(new AuditedDouble(), x.value()*2, "handleDoubledX", "({}*2)", x);
+        PureFAT.logAuditTrail(doubled, FATTemplate.table);
+    }
+    
+    private void run(AuditedDouble sum, AuditedDouble x) {
+        int i = STEPS;
+        while (--i>=0) {
+            PureFAT.audit(sum, sum.value()+x.value(), "handleStep", "({}+{})", sum, x);
+        }
+    }
+    
+}
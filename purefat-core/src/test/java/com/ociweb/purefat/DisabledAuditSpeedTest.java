@@ -0,0 +1,166 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Same comparison speedTestUnboxed makes in SpeedComparisons but against the
+ * audits with auditing switched off, which must cost nothing once compiled.
+ * Wall clock timing depends on the machine so it only runs when asked for
+ * with -Dpurefat.test.timing, the allocation checks always run.
+ */
+public class DisabledAuditSpeedTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DisabledAuditSpeedTest.class);
+    private static final String TIMING_KEY = "purefat.test.timing";
+    private static final int SIDE = 1000;
+    private static final int RUNS = 12;
+    
+    @Test
+    public void testDisabledDoesNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threads;
+        AuditMode original = PureFAT.mode();
+        try {
+            PureFAT.switchMode(AuditMode.NONE);
+            
+            double expected = sumUnboxed();
+            //compile it first, allocation is only dropped once the JIT has it
+            int r = RUNS;
+            while (--r>=0) {
+                assertEquals(expected, sumAudited(), 0d);
+            }
+            long id = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(id);
+            sumAudited();
+            long allocated = bean.getThreadAllocatedBytes(id)-before;
+            //one box per audit would be over 48 bytes per step
+            assertTrue("allocated "+allocated+" bytes", allocated < SIDE*SIDE);
+        } finally {
+            PureFAT.switchMode(original);
+        }
+    }
+    
+    /**
+     * The default mode without -ea, PureFAT is loaded again with assertions
+     * off since this test runs with them on.
+     */
+    @Test
+    public void testDefaultWithoutAssertionsDoesNotAllocate() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        ClassLoader parent = DisabledAuditSpeedTest.class.getClassLoader();
+        URLClassLoader loader = new URLClassLoader(new URL[] {
+                    PureFAT.class.getProtectionDomain().getCodeSource().getLocation(),
+                    DisabledAuditSpeedTest.class.getProtectionDomain().getCodeSource().getLocation()}, parent) {
+            @Override
+            protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.startsWith("com.ociweb.purefat.")) {
+                    return super.loadClass(name, resolve);
+                }
+                Class<?> loaded = findLoadedClass(name);
+                return null==loaded ? findClass(name) : loaded;
+            }
+        };
+        loader.setPackageAssertionStatus("com.ociweb.purefat", false);
+        
+        @SuppressWarnings("unchecked")
+        Callable<Long> allocation = (Callable<Long>)loader.loadClass(DefaultAllocation.class.getName()).newInstance();
+        long allocated = allocation.call();
+        //one box per audit would be over 48 bytes per step
+        assertTrue("allocated "+allocated+" bytes", allocated < SIDE*SIDE);
+        loader.close();
+    }
+    
+    /**
+     * Run inside the loader without assertions.
+     * @return bytes allocated by one compiled pass of the audited loop
+     */
+    public static final class DefaultAllocation implements Callable<Long> {
+        @Override
+        public Long call() {
+            //an earlier test may have asked for verbose, this copy is not shared
+            PureFAT.switchMode(AuditMode.DEFAULT);
+            double expected = sumUnboxed();
+            int r = RUNS;
+            while (--r>=0) {
+                assertEquals(expected, sumAudited(), 0d);
+            }
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+            long id = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(id);
+            sumAudited();
+            long allocated = bean.getThreadAllocatedBytes(id)-before;
+            //without assertions nothing was saved
+            assertNull(PureFAT.stats("disabledDistance"));
+            return allocated;
+        }
+    }
+    
+    @Test
+    public void testDisabledMatchesUnboxed() {
+        Assume.assumeTrue(Boolean.getBoolean(TIMING_KEY));
+        AuditMode original = PureFAT.mode();
+        try {
+            PureFAT.switchMode(AuditMode.NONE);
+            
+            long unboxed = Long.MAX_VALUE;
+            long audited = Long.MAX_VALUE;
+            //best of many runs so both loops are compiled and noise is dropped
+            int r = RUNS;
+            while (--r>=0) {
+                long start = System.nanoTime();
+                sumUnboxed();
+                unboxed = Math.min(unboxed, System.nanoTime()-start);
+                
+                start = System.nanoTime();
+                sumAudited();
+                audited = Math.min(audited, System.nanoTime()-start);
+            }
+            logger.info("unboxed {}ns disabled audit {}ns", unboxed, audited);
+            //the same within noise, this only fails if the audits cost real work
+            assertTrue("disabled audit took "+audited+"ns vs "+unboxed+"ns unboxed", audited < 2*unboxed);
+        } finally {
+            PureFAT.switchMode(original);
+        }
+    }
+    
+    private static double sumUnboxed() {
+        double sum = 0;
+        int j = SIDE;
+        while (--j>=0) {
+            int i = SIDE;
+            while (--i>=0) {
+                sum += Math.sqrt((j*(double)j)+(i*(double)i));
+            }
+        }
+        return sum;
+    }
+    
+    private static double sumAudited() {
+        double sum = 0;
+        int j = SIDE;
+        while (--j>=0) {
+            Double jBox = PureFAT.audit((double)j, "disabledJ");
+            int i = SIDE;
+            while (--i>=0) {
+                Double iBox = PureFAT.audit((double)i, "disabledI");
+                sum += PureFAT.audit(Math.sqrt((jBox*jBox)+(iBox*iBox)), "disabledDistance", "sqrt(({}^2)+({}^2))", jBox, iBox);
+            }
+        }
+        return sum;
+    }
+    
+}
@@ -0,0 +1,369 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.impl.Function;
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailInternal;
+import com.ociweb.purefat.impl.Histogram;
+import com.ociweb.purefat.impl.LabelStats;
+import com.ociweb.purefat.impl.RingBufferStatsMBean;
+
+public class FunctionAuditTrailInternalTest {
+
+    private static final String RING_BUFFER_SIZE_KEY = "purefat.ringbuffer.size";
+    private static final String CAPTURE_KEY = "purefat.capture";
+    private static final String MAX_BYTES_KEY = "purefat.ringbuffer.maxBytes";
+    private static final String PROFILE_KEY = "purefat.ringbuffer.profile";
+    private static final int THREADS = 8;
+    private static final int SAVES_PER_THREAD = 20000;
+
+    /**
+     * Many producers saving into a tiny ring forces it to grow while they are
+     * claiming slots, every value kept alive must still be found afterwards.
+     */
+    @Test
+    public void testConcurrentSavesDuringGrowth() throws Exception {
+        final FunctionAuditTrail trail = newTrail(1024);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Number>>> futures = new ArrayList<Future<List<Number>>>();
+        int t = 0;
+        while (t<THREADS) {
+            final String label = "producer"+t;
+            futures.add(executor.submit(new Callable<List<Number>>() {
+                @Override
+                public List<Number> call() throws Exception {
+                    List<Number> kept = new ArrayList<Number>(SAVES_PER_THREAD);
+                    int i = SAVES_PER_THREAD;
+                    while (--i>=0) {
+                        Double value = new Double(i);
+                        trail.save(value, label, "{}", value);
+                        kept.add(value);
+                    }
+                    return kept;
+                }
+            }));
+            t++;
+        }
+        
+        t = THREADS;
+        while (--t>=0) {
+            String label = "producer"+t;
+            List<Number> kept = futures.get(t).get();
+            assertEquals(SAVES_PER_THREAD, kept.size());
+            int i = 0;
+            while (i<kept.size()) {
+                Function fun = trail.get(kept.get(i));
+                assertNotNull("lost saved value "+i+" of "+label, fun);
+                assertEquals(label, fun.labelName());
+                i += 97;
+            }
+        }
+        executor.shutdown();
+    }
+    
+    /**
+     * Captured params are kept as bits so the trail does not stop them from 
+     * being collected, and can still be followed after they are.
+     */
+    @Test
+    public void testCaptureFollowsCollectedParams() throws Exception {
+        FunctionAuditTrail trail = newTrail(1024, true);
+        
+        Double sample = new Double(3);
+        trail.save(sample, "sample", "{}", sample);
+        Double result = new Double(sample*2);
+        trail.save(result, "doubled", "({}*2)", sample);
+        
+        WeakReference<Double> collected = new WeakReference<Double>(sample);
+        sample = null;
+        int i = 100;
+        while (null!=collected.get() && --i>=0) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("trail must not hold the param", collected.get());
+        
+        Function fun = trail.get(result);
+        assertNotNull(fun);
+        assertEquals("(3.0*2)", fun.toString());
+        
+        Function param = trail.get(fun.params()[0], fun);
+        assertNotNull(param);
+        assertEquals("sample", param.labelName());
+        assertEquals("3.0", param.toString());
+    }
+    
+    /**
+     * At the ceiling the oldest records are overwritten instead of growing
+     * and a param that lost its record is marked as evicted.
+     */
+    @Test
+    public void testCeilingEvictsOldest() throws Exception {
+        FunctionAuditTrail trail = newCeilingTrail();
+        
+        Double root = new Double(1);
+        trail.save(root, "root", "{}", root);
+        Double derived = new Double(root*2);
+        trail.save(derived, "derived", "({}*2)", root);
+        List<Number> kept = fill(trail);
+        
+        assertNull(trail.get(root));
+        Function fun = trail.get(derived);
+        assertNotNull(fun);
+        Function param = trail.get(root, fun);
+        assertNotNull(param);
+        assertEquals("evicted", param.labelName());
+        assertNotNull(trail.get(kept.get(kept.size()-1)));
+    }
+    
+    /**
+     * The ring buffer stats count how each slot was claimed.
+     */
+    @Test
+    public void testStatsCountEvictingSaves() throws Exception {
+        FunctionAuditTrail trail = newCeilingTrail();
+        
+        Double root = new Double(1);
+        trail.save(root, "root", "{}", root);
+        Double derived = new Double(root*2);
+        trail.save(derived, "derived", "({}*2)", root);
+        List<Number> kept = fill(trail);
+        
+        RingBufferStatsMBean stats = ((FunctionAuditTrailInternal)trail).stats();
+        assertTrue(stats.isFull());
+        assertEquals(1024, stats.getCapacity());
+        assertEquals(1025, stats.getSaves());
+        assertEquals(1, stats.getEvictingSaves());
+        assertEquals(1024, stats.getLiveSlots());
+        assertEquals(1023, kept.size());
+        //rates cover only what happened since the last read
+        assertTrue(stats.getSavesPerSecond() > 0);
+        assertEquals(0d, stats.getSavesPerSecond(), 0d);
+        assertTrue(stats.getEvictingSavesPerSecond() > 0);
+    }
+    
+    /**
+     * Producers evicting each other at the ceiling must never hand one 
+     * value the record of another, a value is either found as saved or gone.
+     */
+    @Test
+    public void testConcurrentEvictionKeepsRecordsWhole() throws Exception {
+        final FunctionAuditTrail trail = newCeilingTrail();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<List<Number>>> futures = new ArrayList<Future<List<Number>>>();
+        int t = 0;
+        while (t<THREADS) {
+            final String label = "evictor"+t;
+            futures.add(executor.submit(new Callable<List<Number>>() {
+                @Override
+                public List<Number> call() throws Exception {
+                    List<Number> kept = new ArrayList<Number>(SAVES_PER_THREAD);
+                    int i = SAVES_PER_THREAD;
+                    while (--i>=0) {
+                        Double value = new Double(i);
+                        trail.save(value, label, "{}", value);
+                        kept.add(value);
+                    }
+                    return kept;
+                }
+            }));
+            t++;
+        }
+        
+        t = THREADS;
+        while (--t>=0) {
+            String label = "evictor"+t;
+            for(Number value: futures.get(t).get()) {
+                Function fun = trail.get(value);
+                if (null != fun) {
+                    assertEquals(label, fun.labelName());
+                    assertEquals(value, fun.params()[0]);
+                }
+            }
+        }
+        executor.shutdown();
+    }
+    
+    /**
+     * A profiled run starts with an index big enough for the slots the last
+     * run used, so none is added while the ring fills back up to them.
+     */
+    @Test
+    public void testProfileSizesTheIndex() throws Exception {
+        File file = File.createTempFile("purefat", ".profile");
+        file.deleteOnExit();
+        Properties properties = new Properties();
+        properties.setProperty("size", "100000");
+        properties.setProperty("peakUsed", "60000");
+        properties.setProperty("maxMemory", Long.toString(Runtime.getRuntime().maxMemory()));
+        OutputStream out = new FileOutputStream(file);
+        try {
+            properties.store(out, null);
+        } finally {
+            out.close();
+        }
+        
+        FunctionAuditTrail trail;
+        System.setProperty(PROFILE_KEY, file.getPath());
+        try {
+            trail = newTrail(1024);
+        } finally {
+            System.clearProperty(PROFILE_KEY);
+        }
+        RingBufferStatsMBean stats = ((FunctionAuditTrailInternal)trail).stats();
+        assertEquals(100000, stats.getCapacity());
+        
+        List<Number> kept = new ArrayList<Number>();
+        int i = 60000;
+        while (--i>=0) {
+            Double value = new Double(i);
+            trail.save(value, "profiled", "{}", value);
+            kept.add(value);
+        }
+        assertEquals(1, stats.getIndexCount());
+        assertEquals("profiled", trail.get(kept.get(0)).labelName());
+    }
+    
+    /**
+     * Label stats are kept apart from the records so they outlive them.
+     */
+    @Test
+    public void testLabelStatsOutliveRecords() throws Exception {
+        FunctionAuditTrail trail = newCeilingTrail();
+        
+        Double root = new Double(1);
+        trail.save(root, "root", "{}", root);
+        Double derived = new Double(root*2);
+        trail.save(derived, "derived", "({}*2)", root);
+        fill(trail);
+        assertNull(trail.get(root));
+        
+        LabelStats rootStats = trail.stats("root");
+        assertEquals(1, rootStats.count());
+        assertEquals(1d, rootStats.mean(), 0d);
+        LabelStats fillerStats = trail.stats("filler");
+        assertEquals(1023, fillerStats.count());
+        assertEquals(0d, fillerStats.min(), 0d);
+        assertEquals(1022d, fillerStats.max(), 0d);
+        assertEquals(511d, fillerStats.mean(), 1e-9);
+        assertEquals(295.458965, fillerStats.stdDev(), 1e-6);
+    }
+    
+    /**
+     * Threads saving under one label share its stats cells, none of their 
+     * values may be lost when a cell is taken and the save moves on.
+     */
+    @Test
+    public void testSharedLabelStatsCountEverySave() throws Exception {
+        final FunctionAuditTrail trail = newTrail(1024);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        int t = THREADS;
+        while (--t>=0) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    int i = SAVES_PER_THREAD;
+                    while (--i>=0) {
+                        Double value = new Double(1);
+                        trail.save(value, "shared", "{}", value);
+                    }
+                }
+            }));
+        }
+        for(Future<?> future: futures) {
+            future.get();
+        }
+        executor.shutdown();
+        
+        LabelStats stats = trail.stats("shared");
+        assertEquals(THREADS*SAVES_PER_THREAD, stats.count());
+        assertEquals(1d, stats.mean(), 0d);
+        assertEquals(THREADS*SAVES_PER_THREAD, stats.histogram().total());
+    }
+    
+    /**
+     * Each value lands in the log scaled bucket that holds it.
+     */
+    @Test
+    public void testLabelHistogram() throws Exception {
+        FunctionAuditTrail trail = newCeilingTrail();
+        fill(trail);
+        
+        Histogram histogram = trail.stats("filler").histogram();
+        assertEquals(1023, histogram.total());
+        assertEquals(1, histogram.count(Histogram.ZERO));
+        //768 to 1022 fall in the upper half of 2^9
+        int bucket = Histogram.POSITIVE_UNDERFLOW+1+((9+32)*2)+1;
+        assertEquals("[768.0,1024.0)", Histogram.range(bucket));
+        assertEquals(255, histogram.count(bucket));
+    }
+    
+    private FunctionAuditTrail newCeilingTrail() {
+        return newTrail(1024, false, 1024*176);
+    }
+    
+    /**
+     * Saves 1023 values from 1022 down to 0, all kept alive.
+     */
+    private List<Number> fill(FunctionAuditTrail trail) {
+        List<Number> kept = new ArrayList<Number>();
+        int i = 1023;
+        while (--i>=0) {
+            Double value = new Double(i);
+            trail.save(value, "filler", "{}", value);
+            kept.add(value);
+        }
+        return kept;
+    }
+    
+    private FunctionAuditTrail newTrail(int size) {
+        return newTrail(size, false, 0);
+    }
+    
+    private FunctionAuditTrail newTrail(int size, boolean capture) {
+        return newTrail(size, capture, 0);
+    }
+    
+    private FunctionAuditTrail newTrail(int size, boolean capture, long maxBytes) {
+        String old = System.getProperty(RING_BUFFER_SIZE_KEY);
+        System.setProperty(RING_BUFFER_SIZE_KEY, Integer.toString(size));
+        if (capture) {
+            System.setProperty(CAPTURE_KEY, "true");
+        }
+        System.setProperty(MAX_BYTES_KEY, Long.toString(maxBytes));
+        try {
+            return new FunctionAuditTrailInternal();
+        } finally {
+            System.clearProperty(CAPTURE_KEY);
+            System.clearProperty(MAX_BYTES_KEY);
+            if (null == old) {
+                System.clearProperty(RING_BUFFER_SIZE_KEY);
+            } else {
+                System.setProperty(RING_BUFFER_SIZE_KEY, old);
+            }
+        }
+    }
+    
+}
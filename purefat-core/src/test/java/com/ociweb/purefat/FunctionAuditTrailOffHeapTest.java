@@ -0,0 +1,164 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.impl.Function;
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailOffHeap;
+
+public class FunctionAuditTrailOffHeapTest {
+
+    private static final String SEGMENTS_KEY = "purefat.offheap.segments";
+    private static final int SEGMENT_RECORDS = 1<<16;
+    private static final long WINDOW = 500;
+    
+    @Test
+    public void testTrailFollowsParams() {
+        FunctionAuditTrail trail = newTrail(1);
+        
+        Double sample = new Double(3);
+        trail.save(sample, "sample", "{}", sample);
+        Integer two = new Integer(2);
+        Double result = new Double(sample*two);
+        trail.save(result, "doubled", "({}*{})", sample, two);
+        
+        Function fun = trail.get(result);
+        assertNotNull(fun);
+        assertEquals("doubled", fun.labelName());
+        assertEquals("(3.0*2)", fun.toString());
+        assertEquals(sample, fun.params()[0]);
+        
+        Function param = trail.get(fun.params()[0], fun);
+        assertNotNull(param);
+        assertEquals("sample", param.labelName());
+        assertEquals("3.0", param.toString());
+        
+        //never audited so there is no record for it
+        assertNull(trail.get(fun.params()[1], fun));
+        assertNull(trail.get(new Double(3)));
+    }
+    
+    @Test
+    public void testOldestRecordsAreOverwritten() {
+        FunctionAuditTrail trail = newTrail(1);
+        
+        Double first = new Double(-1);
+        trail.save(first, "first", "{}", first);
+        Double last = null;
+        int i = SEGMENT_RECORDS;
+        while (--i>=0) {
+            last = new Double(i);
+            trail.save(last, "next", "{}", last);
+        }
+        assertNull(trail.get(first));
+        Function fun = trail.get(last);
+        assertNotNull(fun);
+        assertEquals("next", fun.labelName());
+    }
+    
+    @Test
+    public void testFlightRecorderReleasesRecordsOutsideWindow() throws InterruptedException {
+        FunctionAuditTrail trail = newTrail(4, WINDOW);
+        
+        Double old = fill(trail, SEGMENT_RECORDS);
+        Thread.sleep(WINDOW*2);
+        Double recent = fill(trail, SEGMENT_RECORDS+1);
+        
+        //the whole first segment left the window so it was released
+        assertFalse(trail.isRecorded(old));
+        assertNull(trail.get(old));
+        assertTrue(trail.isRecorded(recent));
+    }
+    
+    @Test
+    public void testFlightRecorderFreezesWhileDumping() throws InterruptedException {
+        FunctionAuditTrail trail = newTrail(4, WINDOW);
+        
+        Double old = fill(trail, SEGMENT_RECORDS);
+        Thread.sleep(WINDOW*2);
+        //rendering it keeps its segment until the window has passed
+        assertNotNull(trail.get(old));
+        fill(trail, SEGMENT_RECORDS+1);
+        
+        assertTrue(trail.isRecorded(old));
+        assertNotNull(trail.get(old));
+    }
+    
+    @Test
+    public void testReleasedSegmentReadsAsOverwritten() throws InterruptedException {
+        FunctionAuditTrail trail = newTrail(4, WINDOW);
+        
+        Double old = fill(trail, SEGMENT_RECORDS);
+        Function fun = trail.get(old);
+        assertNotNull(fun);
+        Thread.sleep(WINDOW*2);
+        fill(trail, SEGMENT_RECORDS+1);
+        
+        //following a view into the released segment must not bring it back
+        assertEquals("evicted", trail.get(old, fun).labelName());
+        assertFalse(trail.isRecorded(old));
+    }
+    
+    /**
+     * A view remembers the sequence it was read at, once its position holds
+     * a newer record its params read as evicted, not as the newer record.
+     */
+    @Test
+    public void testOverwrittenViewDoesNotFollowNewerRecord() {
+        FunctionAuditTrail trail = newTrail(1);
+        
+        Double sample = new Double(3);
+        trail.save(sample, "sample", "{}", sample);
+        Double result = new Double(sample*2);
+        trail.save(result, "doubled", "({}*2)", sample);
+        Function fun = trail.get(result);
+        assertNotNull(fun);
+        
+        //writes the same positions again, one more than a full ring
+        Double newer = fill(trail, SEGMENT_RECORDS);
+        assertNotNull(trail.get(newer));
+        
+        Function param = trail.get(sample, fun);
+        assertNotNull(param);
+        assertEquals("evicted", param.labelName());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPositionsMustFitInAnInt() {
+        newTrail(1<<15);
+    }
+    
+    private Double fill(FunctionAuditTrail trail, int count) {
+        Double last = null;
+        while (--count>=0) {
+            last = new Double(count);
+            trail.save(last, "next", "{}", last);
+        }
+        return last;
+    }
+    
+    private FunctionAuditTrail newTrail(int segments) {
+        return newTrail(segments, 0);
+    }
+    
+    private FunctionAuditTrail newTrail(int segments, long window) {
+        String old = System.getProperty(SEGMENTS_KEY);
+        System.setProperty(SEGMENTS_KEY, Integer.toString(segments));
+        try {
+            return window>0 ? FunctionAuditTrailOffHeap.flightRecorder(window) : new FunctionAuditTrailOffHeap();
+        } finally {
+            if (null == old) {
+                System.clearProperty(SEGMENTS_KEY);
+            } else {
+                System.setProperty(SEGMENTS_KEY, old);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,62 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.impl.Function;
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailSegmented;
+
+public class FunctionAuditTrailSegmentedTest {
+
+    /**
+     * Each stage saves on its own thread, the trail must still be found 
+     * from a third thread by searching across the segments.
+     */
+    @Test
+    public void testTrailAcrossThreads() throws Exception {
+        final FunctionAuditTrail trail = new FunctionAuditTrailSegmented();
+        ExecutorService sampler = Executors.newSingleThreadExecutor();
+        ExecutorService computer = Executors.newSingleThreadExecutor();
+        
+        final Double sample = sampler.submit(new Callable<Double>() {
+            @Override
+            public Double call() throws Exception {
+                Double boxed = new Double(3);
+                trail.save(boxed, "sample", "{}", boxed);
+                return boxed;
+            }
+        }).get();
+        
+        Double result = computer.submit(new Callable<Double>() {
+            @Override
+            public Double call() throws Exception {
+                Double boxed = new Double(sample*2);
+                trail.save(boxed, "doubled", "({}*2)", sample);
+                return boxed;
+            }
+        }).get();
+        
+        Function fun = trail.get(result);
+        assertNotNull(fun);
+        assertEquals("doubled", fun.labelName());
+        
+        Function param = trail.get(fun.params()[0], fun);
+        assertNotNull(param);
+        assertEquals("sample", param.labelName());
+        assertEquals("3.0", param.toString());
+        
+        assertNull(trail.get(new Double(3)));
+        
+        sampler.shutdown();
+        computer.shutdown();
+    }
+    
+}
@@ -0,0 +1,118 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.impl.Function;
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailInternal;
+import com.ociweb.purefat.impl.PFSampling;
+import com.ociweb.purefat.impl.PFVerbose;
+
+public class PFSamplingTest {
+
+    private static final int ROOTS = 4000;
+    private static final int RATE = 8;
+    
+    @Test
+    public void testPickedTrailsAreComplete() {
+        FunctionAuditTrail trail = new FunctionAuditTrailInternal();
+        PFSampling impl = new PFSampling(new PFVerbose(trail), trail, RATE);
+        
+        Integer scale = new Integer(3);
+        impl.audit(scale, "sampleScale");
+        //first of its label so always kept
+        assertNotNull(trail.get(scale));
+        Double first = new Double(-1);
+        impl.audit(first, "sampleRoot");
+        //only the first root of a label is kept
+        assertNotNull(trail.get(first));
+        
+        Double[] roots = new Double[ROOTS];
+        Double[] derived = new Double[ROOTS];
+        int i = ROOTS;
+        while (--i>=0) {
+            roots[i] = new Double(i);
+            impl.audit(roots[i], "sampleRoot");
+            derived[i] = new Double(i*3);
+            impl.audit(derived[i], "sampleDerived", "({}*{})", roots[i], scale);
+        }
+        
+        int picked = 0;
+        i = ROOTS;
+        while (--i>=0) {
+            boolean isPicked = null != trail.get(roots[i]);
+            //the scale never pulls in a derived value
+            assertEquals(isPicked, null != trail.get(derived[i]));
+            if (isPicked) {
+                picked++;
+            }
+        }
+        assertTrue("picked "+picked, picked > ROOTS/RATE/2 && picked < 2*ROOTS/RATE);
+        assertEquals(picked+1, trail.stats("sampleRoot").count());
+        assertEquals(picked, trail.stats("sampleDerived").count());
+    }
+    
+    /**
+     * Values computed only from constants are recorded when a picked value
+     * uses them and never crowd the constants out, so over many iterations 
+     * about 1 in rate of the derived values are recorded and each of their
+     * trails is complete.
+     */
+    @Test
+    public void testRecordedFraction() {
+        FunctionAuditTrail trail = new FunctionAuditTrailInternal();
+        PFSampling impl = new PFSampling(new PFVerbose(trail), trail, RATE);
+        
+        Double gain = new Double(1.25);
+        impl.audit(gain, "fractionGain");
+        Double offset = new Double(0.25);
+        impl.audit(offset, "fractionOffset");
+        Double first = new Double(-1);
+        impl.audit(first, "fractionRoot");
+        
+        int iterations = 20000;
+        Double lastScaled = null;
+        int i = iterations;
+        while (--i>=0) {
+            Double root = new Double(i);
+            impl.audit(root, "fractionRoot");
+            //computed from constants alone
+            Double step = new Double(gain.doubleValue()+offset.doubleValue());
+            impl.audit(step, "fractionStep", "({}+{})", gain, offset);
+            Double derived = new Double(root.doubleValue()*step.doubleValue());
+            impl.audit(derived, "fractionDerived", "({}*{})", root, step);
+            Double scaled = new Double(derived.doubleValue()*gain.doubleValue());
+            impl.audit(scaled, "fractionScaled", "({}*{})", derived, gain);
+            if (trail.isRecorded(scaled)) {
+                lastScaled = scaled;
+            }
+        }
+        
+        assertTrue(trail.isRecorded(gain));
+        assertTrue(trail.isRecorded(offset));
+        long picked = trail.stats("fractionRoot").count()-1;
+        assertTrue("picked "+picked, picked > iterations/RATE/2 && picked < 2*iterations/RATE);
+        assertEquals(picked, trail.stats("fractionScaled").count());
+        //a step is only left out when no slot near it is free to keep it, 
+        //which without a GC to clear the old ones happens now and then
+        long steps = trail.stats("fractionStep").count();
+        assertTrue("steps "+steps, steps <= picked && steps > picked*99/100);
+        
+        //every step of a picked trail back to the constants
+        Function scaled = trail.get(lastScaled);
+        assertEquals("fractionScaled", scaled.labelName());
+        Function derived = trail.get(scaled.params()[0], scaled);
+        assertEquals("fractionDerived", derived.labelName());
+        assertEquals("fractionRoot", trail.get(derived.params()[0], derived).labelName());
+        Function step = trail.get(derived.params()[1], derived);
+        assertNotNull(step);
+        assertEquals("fractionStep", step.labelName());
+        assertEquals("fractionGain", trail.get(step.params()[0], step).labelName());
+        assertEquals("fractionOffset", trail.get(step.params()[1], step).labelName());
+    }
+    
+}
@@ -0,0 +1,30 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PureFATModeTest {
+
+    @Test
+    public void testSwitchWhileRunning() {
+        AuditMode original = PureFAT.mode();
+        try {
+            PureFAT.switchMode(AuditMode.NONE);
+            assertEquals(AuditMode.NONE, PureFAT.mode());
+            PureFAT.audit(1.5d, "modeOff");
+            assertNull(PureFAT.stats("modeOff"));
+            
+            PureFAT.switchMode(AuditMode.DEFAULT);
+            PureFAT.audit(2.5d, "modeOn");
+            PureFAT.audit(3.5d, "modeOn");
+            assertEquals(2, PureFAT.stats("modeOn").count());
+            //nothing was kept while it was off
+            assertNull(PureFAT.stats("modeOff"));
+        } finally {
+            PureFAT.switchMode(original);
+        }
+    }
+    
+}
@@ -0,0 +1,81 @@
+package com.ociweb.purefat;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ociweb.purefat.impl.FunctionAuditTrail;
+import com.ociweb.purefat.impl.FunctionAuditTrailOffHeap;
+import com.ociweb.purefat.impl.ViolationReporter;
+
+public class ViolationReporterTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ViolationReporterTest.class);
+    
+    @Test
+    public void testRepeatsAreCountedNotLogged() {
+        FunctionAuditTrail trail = new FunctionAuditTrailOffHeap();
+        ViolationReporter reporter = new ViolationReporter(2, 60000);
+        
+        boolean[] logged = new boolean[5];
+        int i = 0;
+        while (i<logged.length) {
+            logged[i++] = reporter.report(logger, trail, rpm(trail, "leftSensor", i), FATTemplate.table);
+        }
+        assertTrue(logged[0]);
+        assertTrue(logged[1]);
+        assertFalse(logged[2]);
+        assertFalse(logged[3]);
+        assertFalse(logged[4]);
+        
+        //same label and call site but the trail has another shape
+        boolean[] other = new boolean[3];
+        i = 0;
+        while (i<other.length) {
+            other[i++] = reporter.report(logger, trail, rpm(trail, "rightSensor", i), FATTemplate.table);
+        }
+        assertTrue(other[0]);
+        assertTrue(other[1]);
+        assertFalse(other[2]);
+        
+        reporter.summarize(logger);
+    }
+    
+    /**
+     * The same trail checked at two places is two groups, each logged in 
+     * full up to the limit.
+     */
+    @Test
+    public void testCallSitesAreGroupedApart() {
+        FunctionAuditTrail trail = new FunctionAuditTrailOffHeap();
+        ViolationReporter reporter = new ViolationReporter(1, 60000);
+        
+        assertTrue(checkHere(reporter, trail, rpm(trail, "leftSensor", 1)));
+        assertFalse(checkHere(reporter, trail, rpm(trail, "leftSensor", 2)));
+        assertTrue(checkThere(reporter, trail, rpm(trail, "leftSensor", 3)));
+        assertFalse(checkThere(reporter, trail, rpm(trail, "leftSensor", 4)));
+        
+        reporter.summarize(logger);
+    }
+    
+    private boolean checkHere(ViolationReporter reporter, FunctionAuditTrail trail, Number rpm) {
+        return reporter.report(logger, trail, rpm, FATTemplate.table);
+    }
+    
+    private boolean checkThere(ViolationReporter reporter, FunctionAuditTrail trail, Number rpm) {
+        return reporter.report(logger, trail, rpm, FATTemplate.table);
+    }
+    
+    private Number rpm(FunctionAuditTrail trail, String sensorLabel, int sample) {
+        Double sensor = new Double(-sample);
+        trail.save(sensor, sensorLabel, "{}", sensor);
+        Integer two = new Integer(2);
+        Double rpm = new Double(sensor*two);
+        trail.save(rpm, "rpm", "({}*{})", sensor, two);
+        return rpm;
+    }
+    
+}
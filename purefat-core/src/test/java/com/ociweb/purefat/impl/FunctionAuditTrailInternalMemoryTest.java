@@ -0,0 +1,90 @@
+package com.ociweb.purefat.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FunctionAuditTrailInternalMemoryTest {
+
+    private static final String RING_BUFFER_SIZE_KEY = "purefat.ringbuffer.size";
+    private static final int CHUNK_SIZE = 1<<14;
+
+    /**
+     * Running out of memory for a later chunk evicts from the chunks that
+     * are already there.
+     */
+    @Test
+    public void testOutOfMemoryEvictsOldest() {
+        FunctionAuditTrailInternal trail = newTrail(1);
+
+        Double first = new Double(-1);
+        trail.save(first, "first", "{}", first);
+        List<Number> kept = new ArrayList<Number>();
+        int i = CHUNK_SIZE+100;
+        while (--i>=0) {
+            Double value = new Double(i);
+            trail.save(value, "next", "{}", value);
+            kept.add(value);
+        }
+
+        assertTrue(trail.isFull());
+        assertEquals(CHUNK_SIZE, trail.capacity());
+        assertNull(trail.get(first));
+        Function fun = trail.get(kept.get(kept.size()-1));
+        assertNotNull(fun);
+        assertEquals("next", fun.labelName());
+    }
+
+    /**
+     * Without even one chunk there is nothing to evict, the error is thrown
+     * instead of failing later on the missing chunk.
+     */
+    @Test
+    public void testOutOfMemoryForFirstChunk() {
+        FunctionAuditTrailInternal trail = newTrail(0);
+
+        Double value = new Double(1);
+        try {
+            trail.save(value, "first", "{}", value);
+            fail("expected the first chunk to run out of memory");
+        } catch (OutOfMemoryError expected) {
+            //nothing was recorded
+        }
+        assertNull(trail.get(value));
+    }
+
+    /**
+     * @param chunks how many chunks can be allocated before running out of memory
+     */
+    private FunctionAuditTrailInternal newTrail(final int chunks) {
+        String old = System.getProperty(RING_BUFFER_SIZE_KEY);
+        System.setProperty(RING_BUFFER_SIZE_KEY, "1024");
+        try {
+            return new FunctionAuditTrailInternal() {
+                private int allocated;
+
+                @Override
+                Chunk newChunk() {
+                    if (++allocated>chunks) {
+                        throw new OutOfMemoryError("simulated");
+                    }
+                    return super.newChunk();
+                }
+            };
+        } finally {
+            if (null == old) {
+                System.clearProperty(RING_BUFFER_SIZE_KEY);
+            } else {
+                System.setProperty(RING_BUFFER_SIZE_KEY, old);
+            }
+        }
+    }
+
+}
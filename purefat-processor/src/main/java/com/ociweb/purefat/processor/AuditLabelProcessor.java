@@ -0,0 +1,387 @@
+/**
+ * Copyright (c) 2013, Nathan Tippy
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * 
+ * @author  Nathan Tippy <tippyn@ociweb.com>
+ * bitcoin:1NBzAoTTf1PZpYTn7WbXDTf17gddJHC8eY?amount=0.01&message=PFAT%20donation
+ *
+ */
+package com.ociweb.purefat.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.StandardLocation;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.LiteralTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.NewArrayTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+/**
+ * Finds every PureFAT.audit and auditNumber call while the project is 
+ * compiled.  A label used again with a different template and a template
+ * whose {} count does not match its params are compile errors.  Once all 
+ * sources are seen a LabelCatalog is generated with the labels, templates
+ * and call sites, it is registered as a service so the runtime knows every
+ * label before it is saved.
+ * 
+ * Labels and templates must be compile time constants to be checked, any
+ * others get a warning and are left to the runtime.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(AuditLabelProcessor.CATALOG_OPTION)
+public class AuditLabelProcessor extends AbstractProcessor {
+
+    //-Apurefat.catalog=com.example.MyLabels to name the generated class
+    static final String CATALOG_OPTION = "purefat.catalog";
+    
+    private static final String PUREFAT = "com.ociweb.purefat.PureFAT";
+    private static final String CATALOG_INTERFACE = "com.ociweb.purefat.LabelCatalog";
+    private static final String CATALOG_SIMPLE_NAME = "PureFATLabels";
+    private static final String LABEL_WRAP = "{}";
+    
+    private Trees trees;
+    
+    //in the order first seen
+    private final Map<String,CallSite> sites = new LinkedHashMap<String,CallSite>();
+    private String firstPackage;
+    private boolean written;
+    
+    private static final class CallSite {
+        private final String template;
+        private final String className;
+        private final String methodName;
+        private final String fileName;
+        private final long line;
+        
+        private CallSite(String template, String className, String methodName, String fileName, long line) {
+            this.template = template;
+            this.className = className;
+            this.methodName = methodName;
+            this.fileName = fileName;
+            this.line = line;
+        }
+        
+        @Override
+        public String toString() {
+            return className+'.'+methodName+'('+fileName+':'+line+')';
+        }
+    }
+    
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        trees = Trees.instance(processingEnv);
+    }
+    
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+    
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            TreePath path = trees.getPath(element);
+            if (null != path) {
+                new CallScanner(path.getCompilationUnit()).scan(path, null);
+            }
+        }
+        if (roundEnv.processingOver() && !written && !sites.isEmpty()) {
+            written = true;
+            writeCatalog();
+        }
+        //never claims the annotations, other processors still see them
+        return false;
+    }
+    
+    private final class CallScanner extends TreePathScanner<Void,Void> {
+        
+        private final CompilationUnitTree unit;
+        
+        private CallScanner(CompilationUnitTree unit) {
+            this.unit = unit;
+        }
+        
+        @Override
+        public Void visitMethodInvocation(MethodInvocationTree node, Void p) {
+            Element called = trees.getElement(getCurrentPath());
+            if (called instanceof ExecutableElement && isAudit((ExecutableElement)called)) {
+                check(node, (ExecutableElement)called);
+            }
+            return super.visitMethodInvocation(node, p);
+        }
+        
+        private boolean isAudit(ExecutableElement method) {
+            String name = method.getSimpleName().toString();
+            return ("audit".equals(name) || "auditNumber".equals(name)) &&
+                   ((TypeElement)method.getEnclosingElement()).getQualifiedName().contentEquals(PUREFAT);
+        }
+        
+        private void check(MethodInvocationTree node, ExecutableElement method) {
+            List<? extends ExpressionTree> args = node.getArguments();
+            int at = labelIndex(method);
+            String label = constant(args.get(at));
+            if (null == label) {
+                trees.printMessage(Kind.WARNING, "PureFAT label is not a compile time constant so it can not be checked", args.get(at), unit);
+                return;
+            }
+            String template = LABEL_WRAP;
+            if (args.size() > at+1) {
+                template = constant(args.get(at+1));
+                if (null == template) {
+                    trees.printMessage(Kind.WARNING, "PureFAT template for "+label+" is not a compile time constant so it can not be checked", args.get(at+1), unit);
+                    return;
+                }
+                int params = paramCount(args, method, at);
+                int holes = holes(template);
+                if (params >= 0 && params != holes) {
+                    trees.printMessage(Kind.ERROR, "PureFAT template \""+template+"\" for "+label+" has "+holes+" {} but "+params+" params", args.get(at+1), unit);
+                }
+            }
+            
+            CallSite site = callSite(node, template);
+            CallSite first = sites.get(label);
+            if (null == first) {
+                sites.put(label, site);
+                if (null == firstPackage) {
+                    firstPackage = packageName();
+                }
+            } else if (!first.template.equals(template)) {
+                trees.printMessage(Kind.ERROR, "The label "+label+" is not unique within the project. Check: "+first, args.get(at), unit);
+            }
+        }
+        
+        /**
+         * The label is the first String, it follows the value and for handle
+         * audits the carrier of the result as well.
+         */
+        private int labelIndex(ExecutableElement method) {
+            List<? extends VariableElement> formal = method.getParameters();
+            int i = 0;
+            while (i < formal.size() && !formal.get(i).asType().toString().equals(String.class.getName())) {
+                i++;
+            }
+            return i;
+        }
+        
+        /**
+         * @return -1 if the params are passed in an array built elsewhere
+         */
+        private int paramCount(List<? extends ExpressionTree> args, ExecutableElement method, int labelIndex) {
+            List<? extends VariableElement> formal = method.getParameters();
+            if (formal.get(formal.size()-1).asType().getKind() == TypeKind.ARRAY) {
+                ExpressionTree array = args.get(args.size()-1);
+                if (array instanceof NewArrayTree && null != ((NewArrayTree)array).getInitializers()) {
+                    return ((NewArrayTree)array).getInitializers().size();
+                }
+                return -1;
+            }
+            return args.size()-(labelIndex+2);
+        }
+        
+        private String constant(ExpressionTree expression) {
+            if (expression instanceof LiteralTree) {
+                Object value = ((LiteralTree)expression).getValue();
+                return value instanceof String ? (String)value : null;
+            }
+            Element element = trees.getElement(new TreePath(getCurrentPath(), expression));
+            if (element instanceof VariableElement) {
+                Object value = ((VariableElement)element).getConstantValue();
+                return value instanceof String ? (String)value : null;
+            }
+            return null;
+        }
+        
+        private CallSite callSite(MethodInvocationTree node, String template) {
+            String methodName = "<clinit>";
+            String className = "Unknown";
+            TreePath path = getCurrentPath();
+            boolean inMethod = false;
+            while (null != path) {
+                Tree leaf = path.getLeaf();
+                if (!inMethod && leaf instanceof MethodTree) {
+                    methodName = ((MethodTree)leaf).getName().toString();
+                    inMethod = true;
+                } else if (!inMethod && leaf instanceof VariableTree && path.getParentPath().getLeaf() instanceof ClassTree) {
+                    //field initializer
+                    Element field = trees.getElement(path);
+                    methodName = null!=field && field.getModifiers().contains(Modifier.STATIC) ? "<clinit>" : "<init>";
+                    inMethod = true;
+                } else if (leaf instanceof ClassTree) {
+                    Element type = trees.getElement(path);
+                    if (type instanceof TypeElement) {
+                        className = processingEnv.getElementUtils().getBinaryName((TypeElement)type).toString();
+                    }
+                    break;
+                }
+                path = path.getParentPath();
+            }
+            String fileName = unit.getSourceFile().getName();
+            fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'))+1);
+            long line = unit.getLineMap().getLineNumber(trees.getSourcePositions().getStartPosition(unit, node));
+            return new CallSite(template, className, methodName, fileName, line);
+        }
+        
+        private String packageName() {
+            return null == unit.getPackageName() ? "" : unit.getPackageName().toString();
+        }
+    }
+    
+    /**
+     * Counts the {} the same way the templates are filled, an escaped \{}
+     * is not one.
+     */
+    static final int holes(String template) {
+        int count = 0;
+        int i = template.indexOf(LABEL_WRAP);
+        while (i >= 0) {
+            if (0 == i || '\\' != template.charAt(i-1)) {
+                count++;
+            }
+            i = template.indexOf(LABEL_WRAP, i+2);
+        }
+        return count;
+    }
+    
+    private void writeCatalog() {
+        String name = processingEnv.getOptions().get(CATALOG_OPTION);
+        if (null == name) {
+            name = (firstPackage.length()==0 ? "" : firstPackage+'.') + CATALOG_SIMPLE_NAME;
+        }
+        int dot = name.lastIndexOf('.');
+        String packageName = dot<0 ? "" : name.substring(0, dot);
+        String simpleName = name.substring(dot+1);
+        try {
+            Writer writer = processingEnv.getFiler().createSourceFile(name).openWriter();
+            try {
+                writer.write(catalogSource(packageName, simpleName));
+            } finally {
+                writer.close();
+            }
+            writer = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/"+CATALOG_INTERFACE).openWriter();
+            try {
+                writer.write(name);
+                writer.write('\n');
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write PureFAT label catalog "+name+": "+e.getMessage());
+        }
+    }
+    
+    private String catalogSource(String packageName, String simpleName) {
+        StringBuilder labels = new StringBuilder();
+        StringBuilder templates = new StringBuilder();
+        StringBuilder callSites = new StringBuilder();
+        for (Map.Entry<String,CallSite> entry : sites.entrySet()) {
+            CallSite site = entry.getValue();
+            labels.append("        ").append(quote(entry.getKey())).append(",\n");
+            templates.append("        ").append(quote(site.template)).append(",\n");
+            callSites.append("        new StackTraceElement(").append(quote(site.className)).append(", ")
+                     .append(quote(site.methodName)).append(", ")
+                     .append(quote(site.fileName)).append(", ")
+                     .append(site.line).append("),\n");
+        }
+        
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ").append(AuditLabelProcessor.class.getName()).append(", do not edit.\n */\n");
+        source.append("public final class ").append(simpleName).append(" implements ").append(CATALOG_INTERFACE).append(" {\n\n");
+        source.append("    private static final String[] LABELS = new String[] {\n").append(labels).append("    };\n\n");
+        source.append("    private static final String[] TEMPLATES = new String[] {\n").append(templates).append("    };\n\n");
+        source.append("    private static final StackTraceElement[] CALL_SITES = new StackTraceElement[] {\n").append(callSites).append("    };\n\n");
+        source.append("    public String[] labels() {\n        return LABELS.clone();\n    }\n\n");
+        source.append("    public String[] templates() {\n        return TEMPLATES.clone();\n    }\n\n");
+        source.append("    public StackTraceElement[] callSites() {\n        return CALL_SITES.clone();\n    }\n\n");
+        source.append("}\n");
+        return source.toString();
+    }
+    
+    private static final String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length()+2);
+        builder.append('"');
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i++);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        builder.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+    
+    
+}
@@ -0,0 +1,169 @@
+package com.ociweb.purefat.processor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.ociweb.purefat.LabelCatalog;
+import com.ociweb.purefat.PureFAT;
+
+public class AuditLabelProcessorTest {
+
+    private static final String SERVICE = "META-INF/services/com.ociweb.purefat.LabelCatalog";
+
+    @Test
+    public void testCatalogIsGeneratedAndRegistered() throws Exception {
+        File out = Files.createTempDirectory("purefat-processor").toFile();
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(out,
+                "package demo;",                                                  //1
+                "import com.ociweb.purefat.PureFAT;",                             //2
+                "public class Sensors {",                                         //3
+                "    static final String AREA = \"area\";",                       //4
+                "    Double read(Double a, Double b) {",                          //5
+                "        Double x = PureFAT.audit(a.doubleValue(), \"speed\");",  //6
+                "        Double y = PureFAT.audit(a*b, AREA, \"{}*{}\", a, b);",  //7
+                "        return PureFAT.audit(x+y, \"speed\");",                  //8
+                "    }",                                                          //9
+                "    Double tare(Double a) {",                                    //10
+                "        return PureFAT.audit(a-1, \"tare\", \"{}-1\", a);",       //11
+                "    }",                                                          //12
+                "}");
+        assertTrue(diagnostics.getDiagnostics().toString(), errors(diagnostics).isEmpty());
+
+        List<String> service = Files.readAllLines(new File(out, SERVICE).toPath(), Charset.forName("UTF-8"));
+        assertEquals(Arrays.asList("demo.PureFATLabels"), service);
+
+        URLClassLoader loader = new URLClassLoader(new URL[] {out.toURI().toURL()}, getClass().getClassLoader());
+        try {
+            LabelCatalog catalog = (LabelCatalog)loader.loadClass(service.get(0)).newInstance();
+
+            //the index of each label is the id the runtime registers it under
+            assertArrayEquals(new String[] {"speed", "area", "tare"}, catalog.labels());
+            assertArrayEquals(new String[] {"{}", "{}*{}", "{}-1"}, catalog.templates());
+
+            StackTraceElement[] sites = catalog.callSites();
+            assertEquals(3, sites.length);
+            assertEquals(new StackTraceElement("demo.Sensors", "read", "Sensors.java", 6), sites[0]);
+            assertEquals(new StackTraceElement("demo.Sensors", "read", "Sensors.java", 7), sites[1]);
+            assertEquals(new StackTraceElement("demo.Sensors", "tare", "Sensors.java", 11), sites[2]);
+        } finally {
+            loader.close();
+        }
+    }
+
+    @Test
+    public void testLabelReusedWithAnotherTemplateIsAnError() throws Exception {
+        File out = Files.createTempDirectory("purefat-processor").toFile();
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(out,
+                "package demo;",
+                "import com.ociweb.purefat.PureFAT;",
+                "public class Sensors {",
+                "    Double read(Double a) {",
+                "        Double x = PureFAT.audit(a+1, \"speed\", \"{}+1\", a);",
+                "        return PureFAT.audit(x*2, \"speed\", \"{}*2\", x);",
+                "    }",
+                "}");
+        List<Diagnostic<? extends JavaFileObject>> errors = errors(diagnostics);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals(6, errors.get(0).getLineNumber());
+        assertTrue(errors.get(0).getMessage(null), errors.get(0).getMessage(null).contains("speed is not unique"));
+    }
+
+    @Test
+    public void testTemplateMustMatchTheParams() throws Exception {
+        File out = Files.createTempDirectory("purefat-processor").toFile();
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(out,
+                "package demo;",
+                "import com.ociweb.purefat.PureFAT;",
+                "public class Sensors {",
+                "    Double read(Double a, Double b) {",
+                "        return PureFAT.audit(a*b, \"area\", \"{}*{}\", a);",
+                "    }",
+                "}");
+        List<Diagnostic<? extends JavaFileObject>> errors = errors(diagnostics);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0).getMessage(null), errors.get(0).getMessage(null).contains("has 2 {} but 1 params"));
+        assertFalse(new File(out, "demo/Sensors.class").exists());
+    }
+
+    @Test
+    public void testEscapedHolesAreNotCounted() {
+        assertEquals(0, AuditLabelProcessor.holes("total"));
+        assertEquals(2, AuditLabelProcessor.holes("{}+{}"));
+        assertEquals(1, AuditLabelProcessor.holes("\\{}+{}"));
+    }
+
+    private static DiagnosticCollector<JavaFileObject> compile(File out, String ... lines) throws IOException {
+        StringBuilder source = new StringBuilder();
+        for (String line : lines) {
+            source.append(line).append('\n');
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            //the class path may be a single manifest jar, so name the PureFAT classes too
+            String classPath = new File(PureFAT.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath()
+                               + File.pathSeparator + System.getProperty("java.class.path");
+            List<String> options = Arrays.asList("-d", out.getPath(), "-s", out.getPath(), "-classpath", classPath);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                                                                 Arrays.asList(new Source("demo/Sensors", source.toString())));
+            task.setProcessors(Arrays.asList(new AuditLabelProcessor()));
+            task.call();
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        } finally {
+            files.close();
+        }
+        return diagnostics;
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> errors(DiagnosticCollector<JavaFileObject> diagnostics) {
+        List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<Diagnostic<? extends JavaFileObject>>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (Diagnostic.Kind.ERROR == diagnostic.getKind()) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+
+    private static final class Source extends SimpleJavaFileObject {
+
+        private final String content;
+
+        private Source(String path, String content) {
+            super(URI.create("string:///"+path+Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+}